@@ -0,0 +1,107 @@
+package cl.andres.streams.j8.benchmarks;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cl.andres.streams.j8.PrimitiveGroupingCollectors;
+import cl.andres.streams.j8.SalaryAggregator;
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * streamAverage, streamReduce and streamAdvancedCollect at scale: boxed reductions next to the primitive and
+ * columnar ones that replaced them in the demos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class AggregationBenchmarks {
+
+    @Benchmark
+    public double averageMapToDouble(EmployeeData data) {
+        return data.employees()
+                .mapToDouble(Employee::getSalary)
+                .average()
+                .orElse(0);
+    }
+
+    @Benchmark
+    public double averageColumnar(EmployeeData data) {
+        return SalaryAggregator.aggregate(data.table, data.parallel).getAverage();
+    }
+
+    @Benchmark
+    public Double reduceBoxed(EmployeeData data) {
+        return data.employees()
+                .map(Employee::getSalary)
+                .reduce(0.0, Double::sum);
+    }
+
+    @Benchmark
+    public double reduceSum(EmployeeData data) {
+        return data.employees()
+                .mapToDouble(Employee::getSalary)
+                .sum();
+    }
+
+    @Benchmark
+    public double reduceAggregator(EmployeeData data) {
+        return SalaryAggregator.aggregate(data.employees, Employee::getSalary, data.parallel).getSum();
+    }
+
+    @Benchmark
+    public String joining(EmployeeData data) {
+        return data.employees()
+                .map(Employee::getName)
+                .collect(Collectors.joining(", "));
+    }
+
+    @Benchmark
+    public DoubleSummaryStatistics summarizingDouble(EmployeeData data) {
+        return data.employees()
+                .collect(Collectors.summarizingDouble(Employee::getSalary));
+    }
+
+    @Benchmark
+    public DoubleSummaryStatistics summaryStatistics(EmployeeData data) {
+        return data.employees()
+                .mapToDouble(Employee::getSalary)
+                .summaryStatistics();
+    }
+
+    @Benchmark
+    public Map<Boolean, List<Integer>> partitioningBy(EmployeeData data) {
+        return data.stream(data.boxedInts)
+                .collect(Collectors.partitioningBy(i -> i % 2 == 0));
+    }
+
+    @Benchmark
+    public Map<Character, List<Employee>> groupingBy(EmployeeData data) {
+        return data.employees()
+                .collect(Collectors.groupingBy(e -> e.getName().charAt(0)));
+    }
+
+    @Benchmark
+    public Map<Character, List<Employee>> groupingByChar(EmployeeData data) {
+        return data.employees()
+                .collect(PrimitiveGroupingCollectors.groupingByChar(e -> e.getName().charAt(0)));
+    }
+
+    @Benchmark
+    public Map<Character, Long> countingByChar(EmployeeData data) {
+        return data.employees()
+                .collect(PrimitiveGroupingCollectors.countingByChar(e -> e.getName().charAt(0)));
+    }
+}
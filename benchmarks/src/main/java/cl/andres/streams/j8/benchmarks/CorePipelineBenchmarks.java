@@ -0,0 +1,146 @@
+package cl.andres.streams.j8.benchmarks;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * streamCollect, streamMap, streamFilter, streamFindFirst, streamToArray, streamFlatMap, streamSort, streamMinMax,
+ * streamDistinct and streamAllMatchAnyMatchNoneMatch at scale. Boxed variants are the pipelines as the demos write
+ * them; primitive variants keep the values in IntStreams.
+ *
+ * mapBoxed looks every id up with the linear scan the demos started from, over LinearScanData; mapIndexed is the
+ * same pipeline over the IndexedEmployeeRepository that replaced it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CorePipelineBenchmarks {
+
+    @Benchmark
+    public List<Employee> collect(EmployeeData data) {
+        return data.employees()
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> mapBoxed(LinearScanData scan) {
+        return scan.data.stream(scan.data.boxedIds)
+                .map(scan::findById)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> mapIndexed(EmployeeData data) {
+        return data.stream(data.boxedIds)
+                .map(id -> data.repository.findById(id))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> mapPrimitive(EmployeeData data) {
+        return data.repository.findAllById(data.intStream(data.ids))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> filterBoxed(EmployeeData data) {
+        return data.stream(data.boxedIds)
+                .map(id -> data.repository.findById(id))
+                .filter(Objects::nonNull)
+                .filter(e -> e.getSalary() > 200000)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> filterPrimitive(EmployeeData data) {
+        return data.repository.findAllById(data.intStream(data.ids))
+                .filter(e -> e.getSalary() > 200000)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Employee findFirst(EmployeeData data) {
+        return data.stream(data.boxedIds)
+                .map(id -> data.repository.findById(id))
+                .filter(e -> e != null)
+                .filter(e -> e.getSalary() > 300000)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Employee[] toArray(EmployeeData data) {
+        return data.employees().toArray(Employee[]::new);
+    }
+
+    @Benchmark
+    public List<String> flatMap(EmployeeData data) {
+        return data.stream(data.nameParts)
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Employee> sortByName(EmployeeData data) {
+        return data.employees()
+                .sorted((e1, e2) -> e1.getName().compareTo(e2.getName()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void minMaxBoxed(EmployeeData data, Blackhole blackhole) {
+        blackhole.consume(data.employees().min((e1, e2) -> e1.getId() - e2.getId()).orElse(null));
+        blackhole.consume(data.employees().max(Comparator.comparing(Employee::getSalary)).orElse(null));
+    }
+
+    @Benchmark
+    public void minMaxPrimitive(EmployeeData data, Blackhole blackhole) {
+        blackhole.consume(data.employees().mapToInt(Employee::getId).min());
+        blackhole.consume(data.employees().mapToDouble(Employee::getSalary).max());
+    }
+
+    @Benchmark
+    public List<Integer> distinctBoxed(EmployeeData data) {
+        return data.stream(data.boxedInts)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public int[] distinctPrimitive(EmployeeData data) {
+        return data.intStream(data.ints)
+                .distinct()
+                .toArray();
+    }
+
+    @Benchmark
+    public void matchBoxed(EmployeeData data, Blackhole blackhole) {
+        blackhole.consume(data.stream(data.boxedInts).allMatch(i -> i % 2 == 0));
+        blackhole.consume(data.stream(data.boxedInts).anyMatch(i -> i % 3 == 1));
+        blackhole.consume(data.stream(data.boxedInts).noneMatch(i -> i < 0));
+    }
+
+    @Benchmark
+    public void matchPrimitive(EmployeeData data, Blackhole blackhole) {
+        blackhole.consume(data.intStream(data.ints).allMatch(i -> i % 2 == 0));
+        blackhole.consume(data.intStream(data.ints).anyMatch(i -> i % 3 == 1));
+        blackhole.consume(data.intStream(data.ints).noneMatch(i -> i < 0));
+    }
+}
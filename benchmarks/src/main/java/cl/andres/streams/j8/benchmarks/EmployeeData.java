@@ -0,0 +1,110 @@
+package cl.andres.streams.j8.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cl.andres.streams.j8.ColumnarEmployeeTable;
+import cl.andres.streams.j8.IndexedEmployeeRepository;
+import cl.andres.streams.j8.SalaryChangeSink;
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Synthetic data set shared by the benchmarks: size employees with ids 1..size in shuffled order, names built from
+ * a fixed list of first and last names, and salaries between 30 000 and 330 000.
+ *
+ * Every benchmark runs sequentially and in parallel; parallel streams use the common pool.
+ */
+@State(Scope.Benchmark)
+public class EmployeeData {
+
+    private static final String[] FIRST_NAMES = {
+            "Jeff", "Bill", "Mark", "Ada", "Grace", "Linus", "Alan", "Barbara", "Dennis", "Edsger",
+            "Frances", "Guido", "Hedy", "Ivan", "John", "Ken", "Leslie", "Margaret", "Niklaus", "Radia"
+    };
+    private static final String[] LAST_NAMES = {
+            "Bezos", "Gates", "Zuckerberg", "Lovelace", "Hopper", "Torvalds", "Turing", "Liskov", "Ritchie",
+            "Dijkstra", "Allen", "van Rossum", "Lamarr", "Sutherland", "Backus", "Thompson", "Lamport",
+            "Hamilton", "Wirth", "Perlman"
+    };
+
+    @Param({"10", "10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    public Employee[] employees;
+    public List<Employee> employeeList;
+    public int[] ids;
+    public Integer[] boxedIds;
+    public List<Integer> boxedInts;
+    public int[] ints;
+    public String[] names;
+    public List<List<String>> nameParts;
+    public IndexedEmployeeRepository repository;
+    public ColumnarEmployeeTable table;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        Employee.setSalaryChangeSink(SalaryChangeSink.noOp());
+
+        employees = new Employee[size];
+        names = new String[size];
+        for (int i = 0; i < size; i++) {
+            names[i] = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            employees[i] = new Employee(i + 1, names[i], 30_000 + random.nextInt(300_000));
+        }
+        employeeList = Arrays.asList(employees);
+        nameParts = Arrays.stream(names)
+                .map(name -> Arrays.asList(name.split(" ", 2)))
+                .collect(Collectors.toList());
+
+        // Ids to look up: every employee once, in random order, plus one unknown id in ten.
+        ids = IntStream.rangeClosed(1, size + size / 10).toArray();
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        boxedIds = IntStream.of(ids).boxed().toArray(Integer[]::new);
+
+        // Small values with many duplicates, for distinct/match/partition pipelines.
+        ints = random.ints(size, 0, Math.max(1, size / 4)).map(i -> i * 2).toArray();
+        boxedInts = Arrays.asList(IntStream.of(ints).boxed().toArray(Integer[]::new));
+
+        repository = IndexedEmployeeRepository.of(employees);
+        table = ColumnarEmployeeTable.of(employees);
+    }
+
+    public Stream<Employee> employees() {
+        Stream<Employee> stream = Arrays.stream(employees);
+        return parallel ? stream.parallel() : stream;
+    }
+
+    public <T> Stream<T> stream(T[] values) {
+        Stream<T> stream = Arrays.stream(values);
+        return parallel ? stream.parallel() : stream;
+    }
+
+    public <T> Stream<T> stream(List<T> values) {
+        return parallel ? values.parallelStream() : values.stream();
+    }
+
+    public IntStream intStream(int[] values) {
+        IntStream stream = Arrays.stream(values);
+        return parallel ? stream.parallel() : stream;
+    }
+}
@@ -0,0 +1,87 @@
+package cl.andres.streams.j8.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cl.andres.streams.j8.ChannelLineWriter;
+import cl.andres.streams.j8.MappedLineSource;
+import cl.andres.streams.j8.StreamsJ8;
+
+/**
+ * streamFileWrite and streamFileRead at scale, one employee name per line. Files live in a temporary directory that
+ * is removed after the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class FileBenchmarks {
+
+    @State(Scope.Benchmark)
+    public static class TempFiles {
+        Path directory;
+        Path input;
+        Path output;
+
+        @Setup(Level.Trial)
+        public void setUp(EmployeeData data) throws IOException {
+            directory = Files.createTempDirectory("streams-j8-benchmarks");
+            input = directory.resolve("input.txt");
+            output = directory.resolve("output.txt");
+
+            ChannelLineWriter.write(Arrays.stream(data.names), input);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    public void writePrintWriter(EmployeeData data, TempFiles files) throws IOException {
+        try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(files.output))) {
+            data.stream(data.names).forEach(pw::println);
+        }
+    }
+
+    @Benchmark
+    public long writeChannel(EmployeeData data, TempFiles files) throws IOException {
+        return ChannelLineWriter.write(data.stream(data.names), files.output);
+    }
+
+    @Benchmark
+    public List<String> readFilesLines(EmployeeData data, TempFiles files) throws IOException {
+        try (Stream<String> lines = Files.lines(files.input)) {
+            return StreamsJ8.getPalindrome(data.parallel ? lines.parallel() : lines, 5);
+        }
+    }
+
+    @Benchmark
+    public List<String> readMapped(EmployeeData data, TempFiles files) throws IOException {
+        Stream<CharSequence> lines = MappedLineSource.lines(files.input);
+        return StreamsJ8.getPalindrome(data.parallel ? lines.parallel() : lines, 5);
+    }
+}
@@ -0,0 +1,44 @@
+package cl.andres.streams.j8.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * The EmployeeData set for benchmarks that look employees up the way the demos' original EmployeeRepository.findById()
+ * did, by scanning the whole array. Looking up every id costs about size² / 2 comparisons, so the sizes stop at
+ * 100 000 instead of 10 000 000.
+ */
+@State(Scope.Benchmark)
+public class LinearScanData {
+
+    @Param({"10", "10000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    public EmployeeData data;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = new EmployeeData();
+        data.size = size;
+        data.parallel = parallel;
+        data.setUp();
+    }
+
+    public Employee findById(Integer id) {
+        for (Employee employee : data.employees) {
+            if (employee.getId().equals(id)) {
+                return employee;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+package cl.andres.streams.j8.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cl.andres.streams.j8.PayrollUpdater;
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * streamForEach, streamPeek, streamParallel, streamGenerate, streamIterate and streamInfinite at scale.
+ *
+ * The raises use a tiny percentage so that salaries stay finite however many invocations a trial runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ParallelBenchmarks {
+
+    private static final double RAISE = 0.000001;
+
+    @Benchmark
+    public void raiseForEach(EmployeeData data) {
+        data.stream(data.employeeList).forEach(e -> e.salaryIncrement(RAISE));
+    }
+
+    @Benchmark
+    public List<Employee> raisePeek(EmployeeData data, Blackhole blackhole) {
+        return data.stream(data.employeeList)
+                .peek(e -> e.salaryIncrement(RAISE))
+                .peek(blackhole::consume)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public int raisePayrollUpdater(EmployeeData data) {
+        return new PayrollUpdater(data.repository).raiseWhere(e -> e.getSalary() > 0, RAISE);
+    }
+
+    @Benchmark
+    public List<Double> generate(EmployeeData data) {
+        Stream<Double> stream = Stream.generate(Math::random);
+        return (data.parallel ? stream.parallel() : stream)
+                .limit(data.size)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Integer> iterate(EmployeeData data) {
+        Stream<Integer> stream = Stream.iterate(2, i -> i * 2);
+        return (data.parallel ? stream.parallel() : stream)
+                .limit(data.size)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Integer> infiniteSkipLimit(EmployeeData data) {
+        Stream<Integer> stream = Stream.iterate(2, i -> i * 2);
+        return (data.parallel ? stream.parallel() : stream)
+                .skip(data.size / 2)
+                .limit(data.size / 2)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,262 @@
+package cl.andres.streams.j8;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A map() stage for slow lookups: groups the upstream elements into batches and resolves several batches at once on
+ * an executor.
+ *
+ * map(EmployeeRepository::findById) against a remote store waits for one round trip per element, one after the other.
+ * This stage reads batchSize elements at a time, hands each batch to a batch lookup function on the executor, and
+ * keeps up to maxConcurrency batches in flight, so the stream waits for roughly one round trip per maxConcurrency
+ * batches instead of one per element.
+ *
+ * The lookup must return one result per input, in the order of its input; null results are passed on as they are. In
+ * ordered mode the results come out in source order, each batch waiting for the ones before it; unordered, every batch
+ * is passed on as soon as it completes. A failed lookup fails the stream with the exception the lookup threw, once the
+ * stream reaches that batch (ordered) or as soon as it completes (unordered), and the batches still in flight are
+ * cancelled. Closing the stream also cancels them, which matters after a short-circuiting operation.
+ *
+ * The upstream is consumed from the thread running the stream's terminal operation, so the returned stream is
+ * sequential; the lookups are what runs concurrently.
+ */
+public class AsyncBatchStage<I, O> {
+
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static volatile ExecutorService defaultExecutor;
+
+    private final Function<? super List<I>, ? extends List<? extends O>> lookup;
+    private final int batchSize;
+    private final int maxConcurrency;
+    private final boolean ordered;
+    private final Executor executor;
+
+    private AsyncBatchStage(Builder<I, O> builder) {
+        this.lookup = builder.lookup;
+        this.batchSize = builder.batchSize;
+        this.maxConcurrency = builder.maxConcurrency;
+        this.ordered = builder.ordered;
+        this.executor = builder.executor != null ? builder.executor : defaultExecutor();
+    }
+
+    /**
+     * @return a lazy stream of the lookup results; nothing is read from the upstream until it is consumed
+     */
+    public Stream<O> apply(Stream<I> upstream) {
+        Batches batches = new Batches(upstream.iterator());
+
+        return StreamSupport.stream(batches, false)
+                .onClose(batches::cancel)
+                .onClose(upstream::close);
+    }
+
+    public static class Builder<I, O> {
+        private final Function<? super List<I>, ? extends List<? extends O>> lookup;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private boolean ordered = true;
+        private Executor executor;
+
+        /**
+         * @param lookup resolves a batch, returning one result per input in the same order; called concurrently
+         */
+        public Builder(Function<? super List<I>, ? extends List<? extends O>> lookup) {
+            this.lookup = lookup;
+        }
+
+        public Builder<I, O> batchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of batches being looked up at the same time.
+         */
+        public Builder<I, O> maxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+            }
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * Whether results keep the source order (the default) or come out as their batches complete.
+         */
+        public Builder<I, O> ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * Executor for the lookups; by default a shared pool of daemon threads named batch-lookup-N, which grows with
+         * the batches in flight, since lookups block.
+         */
+        public Builder<I, O> executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public AsyncBatchStage<I, O> build() {
+            return new AsyncBatchStage<>(this);
+        }
+    }
+
+    private static Executor defaultExecutor() {
+        ExecutorService current = defaultExecutor;
+
+        if (current == null) {
+            synchronized (AsyncBatchStage.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "batch-lookup-" + THREAD_COUNT.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                current = defaultExecutor;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Pulls batches from the upstream, keeps up to maxConcurrency of them in flight and emits their results.
+     */
+    private final class Batches extends Spliterators.AbstractSpliterator<O> {
+        private final Iterator<I> upstream;
+        private final Deque<CompletableFuture<List<? extends O>>> inFlight = new ArrayDeque<>();
+        private final BlockingQueue<CompletableFuture<List<? extends O>>> completed = new LinkedBlockingQueue<>();
+        private List<? extends O> current;
+        private int next;
+        private volatile boolean cancelled;
+
+        Batches(Iterator<I> upstream) {
+            super(Long.MAX_VALUE, ordered ? Spliterator.ORDERED : 0);
+            this.upstream = upstream;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super O> action) {
+            while (current == null || next == current.size()) {
+                current = nextBatch();
+                next = 0;
+                if (current == null) {
+                    return false;
+                }
+            }
+            action.accept(current.get(next++));
+            return true;
+        }
+
+        /**
+         * @return the results of the next batch, or null once the upstream and every batch are done
+         */
+        private List<? extends O> nextBatch() {
+            if (cancelled) {
+                throw new IllegalStateException("stream closed");
+            }
+
+            submit();
+            if (inFlight.isEmpty()) {
+                return null;
+            }
+
+            CompletableFuture<List<? extends O>> batch;
+            if (ordered) {
+                batch = inFlight.removeFirst();
+            } else {
+                batch = takeCompleted();
+                inFlight.remove(batch);
+            }
+            return join(batch);
+        }
+
+        /**
+         * Tops the batches in flight up to maxConcurrency.
+         */
+        private void submit() {
+            while (inFlight.size() < maxConcurrency && upstream.hasNext()) {
+                List<I> batch = new ArrayList<>(batchSize);
+
+                while (batch.size() < batchSize && upstream.hasNext()) {
+                    batch.add(upstream.next());
+                }
+
+                CompletableFuture<List<? extends O>> future = CompletableFuture.supplyAsync(() -> {
+                    List<? extends O> results = lookup.apply(batch);
+
+                    if (results.size() != batch.size()) {
+                        throw new IllegalStateException("lookup returned " + results.size() + " results for "
+                                + batch.size() + " inputs");
+                    }
+                    return results;
+                }, executor);
+
+                inFlight.addLast(future);
+                if (!ordered) {
+                    future.whenComplete((results, failure) -> completed.add(future));
+                }
+            }
+        }
+
+        private CompletableFuture<List<? extends O>> takeCompleted() {
+            try {
+                return completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new IllegalStateException("interrupted while waiting for a batch lookup", e);
+            }
+        }
+
+        private List<? extends O> join(CompletableFuture<List<? extends O>> batch) {
+            try {
+                return batch.join();
+            } catch (CompletionException e) {
+                cancel();
+
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (CompletableFuture<?> batch : inFlight) {
+                batch.cancel(false);
+            }
+            inFlight.clear();
+        }
+    }
+}
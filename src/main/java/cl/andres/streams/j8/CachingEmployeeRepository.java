@@ -0,0 +1,436 @@
+package cl.andres.streams.j8;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * A size-bounded cache in front of a slower EmployeeLookup.
+ *
+ * findById() answers hot ids from memory and only goes to the store on a miss, caching what it loaded. The cache is
+ * split into stripes by id; each stripe is an open-addressing int -> employee table, like IndexedEmployeeRepository's,
+ * that holds at most its share of maximumSize entries, so a stripe that receives more than its share of the hot ids
+ * starts evicting before the cache as a whole is full. Reads are lock-free; writers lock only their stripe.
+ *
+ * Eviction is CLOCK, an approximation of LRU that needs no write on the read path beyond a reference flag: a hit marks
+ * its entry as referenced, and a full stripe evicts the first entry its clock hand finds unreferenced, clearing the
+ * flags it passes on the way. An entry is therefore only evicted after a full sweep of the hand without being read.
+ *
+ * salaryIncrement() applies the raise to the store's employee, taking it from the cache when it is there. With
+ * write-through the updated employee is cached, so the next read is a hit; otherwise its entry is invalidated and the
+ * next read loads it again.
+ *
+ * A warm-up from an EmployeeSnapshot caches copies built from the snapshot rather than the store's own employees, so
+ * it costs no round trip to the store. Such copies do not see raises, so the first salaryIncrement() after the warm-up
+ * invalidates every entry still holding one, and a raise never applies to a copy.
+ */
+public class CachingEmployeeRepository implements EmployeeLookup {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+    static final int MAX_STRIPES = 16;
+
+    private final EmployeeLookup store;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int maximumSize;
+    private final boolean writeThrough;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    // set once a snapshot warm-up has cached copies, cleared by the first write
+    private volatile boolean snapshotCopies;
+
+    private CachingEmployeeRepository(Builder builder) {
+        int stripeCount = Math.min(builder.stripes, Integer.highestOneBit(builder.maximumSize));
+        int perStripe = builder.maximumSize / stripeCount;
+        int remainder = builder.maximumSize % stripeCount;
+
+        this.store = builder.store;
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        this.maximumSize = builder.maximumSize;
+        this.writeThrough = builder.writeThrough;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(i < remainder ? perStripe + 1 : perStripe);
+        }
+    }
+
+    @Override
+    public Employee findById(int id) {
+        int hash = IndexedEmployeeRepository.mix(id);
+        Stripe stripe = stripe(hash);
+        Employee cached = stripe.get(id, hash);
+
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        Employee loaded = store.findById(id);
+        if (loaded != null) {
+            stripe.put(id, hash, loaded, false);
+        }
+        return loaded;
+    }
+
+    /**
+     * Raises the salary of the store's employee, which publishes the change like Employee.salaryIncrement() does.
+     *
+     * @return false if the store has no employee with the id
+     */
+    public boolean salaryIncrement(int id, double amount) {
+        if (snapshotCopies) {
+            snapshotCopies = false;
+            for (Stripe stripe : stripes) {
+                stripe.removeCopies();
+            }
+        }
+
+        int hash = IndexedEmployeeRepository.mix(id);
+        Stripe stripe = stripe(hash);
+        Node cached = stripe.node(id, hash);
+        Employee employee = cached != null && !cached.copy ? cached.employee : store.findById(id);
+
+        if (employee == null) {
+            stripe.remove(id, hash);
+            return false;
+        }
+
+        employee.salaryIncrement(amount);
+        if (writeThrough) {
+            stripe.put(id, hash, employee, false);
+        } else {
+            stripe.remove(id, hash);
+        }
+        return true;
+    }
+
+    public void invalidate(int id) {
+        int hash = IndexedEmployeeRepository.mix(id);
+        stripe(hash).remove(id, hash);
+    }
+
+    public void invalidateAll() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Fills the cache with the first maximumSize rows of the snapshot. The cached employees are copies built from the
+     * snapshot, which the first salaryIncrement() invalidates; they must not be raised directly.
+     *
+     * @return number of employees cached
+     */
+    public int warmUp(EmployeeSnapshot snapshot) {
+        int rows = Math.min(snapshot.size(), maximumSize);
+
+        for (int row = 0; row < rows; row++) {
+            cache(snapshot.employee(row), true);
+        }
+        snapshotCopies = rows > 0 || snapshotCopies;
+        return rows;
+    }
+
+    /**
+     * Caches the first maximumSize employees of the stream, which is closed afterwards.
+     *
+     * @return number of employees cached
+     */
+    public int warmUp(Stream<Employee> employees) {
+        int cached = 0;
+
+        try (Stream<Employee> source = employees) {
+            for (Iterator<Employee> iterator = source.iterator(); cached < maximumSize && iterator.hasNext(); ) {
+                Employee employee = iterator.next();
+                if (employee != null) {
+                    cache(employee, false);
+                    cached++;
+                }
+            }
+        }
+        return cached;
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private void cache(Employee employee, boolean copy) {
+        int id = employee.getId();
+        int hash = IndexedEmployeeRepository.mix(id);
+
+        stripe(hash).put(id, hash, employee, copy);
+    }
+
+    private Stripe stripe(int hash) {
+        // the low bits pick the slot within a stripe, so the stripe comes from the high ones
+        return stripes[(hash >>> 24) & stripeMask];
+    }
+
+    public static class Builder {
+        private final EmployeeLookup store;
+        private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private int stripes = MAX_STRIPES;
+        private boolean writeThrough;
+
+        public Builder(EmployeeLookup store) {
+            this.store = store;
+        }
+
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Number of independently locked parts, rounded down to a power of two and to at most maximumSize.
+         */
+        public Builder stripes(int stripes) {
+            if (stripes < 1 || stripes > MAX_STRIPES) {
+                throw new IllegalArgumentException("stripes must be in [1, " + MAX_STRIPES + "]: " + stripes);
+            }
+            this.stripes = Integer.highestOneBit(stripes);
+            return this;
+        }
+
+        /**
+         * Whether salaryIncrement() caches the updated employee instead of invalidating its entry.
+         */
+        public Builder writeThrough(boolean writeThrough) {
+            this.writeThrough = writeThrough;
+            return this;
+        }
+
+        public CachingEmployeeRepository build() {
+            return new CachingEmployeeRepository(this);
+        }
+    }
+
+    private static final class Node {
+        final int id;
+        final Employee employee;
+        // built from a snapshot instead of loaded from the store
+        final boolean copy;
+        // set by readers without synchronization: a lost update only costs the entry one sweep of the clock hand
+        boolean referenced;
+
+        Node(int id, Employee employee, boolean copy) {
+            this.id = id;
+            this.employee = employee;
+            this.copy = copy;
+        }
+    }
+
+    /**
+     * Linear probing over a table at least twice the stripe's capacity. Writers hold the stripe's lock; readers compare
+     * the id of the node they load, so a node moved by a concurrent removal can make them miss, never return another
+     * id's employee.
+     */
+    private final class Stripe {
+        private final AtomicReferenceArray<Node> nodes;
+        private final int mask;
+        private final int capacity;
+        private int size;
+        private int hand;
+
+        Stripe(int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(2 * capacity - 1, 1)) << 1;
+
+            this.nodes = new AtomicReferenceArray<>(tableSize);
+            this.mask = tableSize - 1;
+            this.capacity = capacity;
+        }
+
+        Employee get(int id, int hash) {
+            Node node = node(id, hash);
+            return node == null ? null : node.employee;
+        }
+
+        Node node(int id, int hash) {
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                Node node = nodes.get(slot);
+
+                if (node == null) {
+                    return null;
+                }
+                if (node.id == id) {
+                    node.referenced = true;
+                    return node;
+                }
+            }
+        }
+
+        synchronized void put(int id, int hash, Employee employee, boolean copy) {
+            int slot = find(id, hash);
+
+            if (slot >= 0) {
+                nodes.set(slot, new Node(id, employee, copy));
+                return;
+            }
+            if (size == capacity) {
+                evict();
+            }
+
+            for (slot = hash & mask; nodes.get(slot) != null; slot = (slot + 1) & mask) {
+                // probe for a free slot
+            }
+            nodes.set(slot, new Node(id, employee, copy));
+            size++;
+        }
+
+        synchronized void remove(int id, int hash) {
+            int slot = find(id, hash);
+
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        synchronized void removeCopies() {
+            for (int slot = 0; slot <= mask; slot++) {
+                // delete() may shift another copy into the slot
+                for (Node node = nodes.get(slot); node != null && node.copy; node = nodes.get(slot)) {
+                    delete(slot);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            for (int slot = 0; slot <= mask; slot++) {
+                nodes.set(slot, null);
+            }
+            size = 0;
+        }
+
+        private int find(int id, int hash) {
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                Node node = nodes.get(slot);
+
+                if (node == null) {
+                    return -1;
+                }
+                if (node.id == id) {
+                    return slot;
+                }
+            }
+        }
+
+        private void evict() {
+            while (true) {
+                Node node = nodes.get(hand);
+
+                if (node != null) {
+                    if (!node.referenced) {
+                        delete(hand);
+                        evictions.increment();
+                        return;
+                    }
+                    node.referenced = false;
+                }
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        /**
+         * Empties the slot and shifts back the nodes after it that would no longer be reachable from their home slot.
+         */
+        private void delete(int slot) {
+            int free = slot;
+            nodes.set(free, null);
+            size--;
+
+            for (int next = (free + 1) & mask; ; next = (next + 1) & mask) {
+                Node node = nodes.get(next);
+
+                if (node == null) {
+                    return;
+                }
+
+                int home = IndexedEmployeeRepository.mix(node.id) & mask;
+                // the node stays if its home lies cyclically in (free, next]
+                boolean reachable = free <= next ? free < home && home <= next : free < home || home <= next;
+                if (!reachable) {
+                    nodes.set(free, node);
+                    nodes.set(next, null);
+                    free = next;
+                }
+            }
+        }
+    }
+
+    public static final class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+
+        CacheStats(long hits, long misses, long evictions, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return fraction of lookups answered from the cache, or 0 if there were none
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "CacheStats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    ", hitRate=" + getHitRate() +
+                    '}';
+        }
+    }
+}
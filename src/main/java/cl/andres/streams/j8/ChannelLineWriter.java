@@ -0,0 +1,369 @@
+package cl.andres.streams.j8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of lines as UTF-8, each followed by System.lineSeparator(), the same bytes PrintWriter.println()
+ * would produce.
+ *
+ * Lines are encoded straight into direct ByteBuffers (ASCII characters byte by byte, anything else through a
+ * CharsetEncoder) and the filled buffers are handed to the channel together in one gathering write, instead of
+ * going through a Writer, its lock and its small buffers for every line.
+ *
+ * A sequential stream is written while it is consumed, holding at most GATHER_BUFFERS buffers. A parallel stream is
+ * split into fork-join leaves that each encode their own lines into their own segment; the segments that are finished
+ * and have no unfinished segment before them are written in encounter order as soon as they complete, and their
+ * buffers are handed to the leaves still encoding, so only the segments finished out of order wait in memory.
+ *
+ * encoding() collects the lines into memory instead, for callers that write them somewhere else.
+ */
+public final class ChannelLineWriter {
+
+    static final int FIRST_BUFFER_BYTES = 1 << 16;
+    static final int BUFFER_BYTES = 1 << 20;
+    static final int GATHER_BUFFERS = 8;
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private ChannelLineWriter() {
+    }
+
+    /**
+     * Creates or truncates the file and writes the lines to it.
+     *
+     * @return number of lines written
+     */
+    public static long write(Stream<? extends CharSequence> lines, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            return write(lines, channel);
+        }
+    }
+
+    /**
+     * Writes the lines at the channel's current position.
+     *
+     * @return number of lines written
+     */
+    public static long write(Stream<? extends CharSequence> lines, GatheringByteChannel channel) throws IOException {
+        if (lines.isParallel()) {
+            return writeParallel(lines.spliterator(), channel);
+        }
+
+        EncodedLines segment = new EncodedLines(channel, new ArrayDeque<>());
+        try {
+            lines.forEachOrdered(segment::append);
+            segment.drain();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return segment.lines;
+    }
+
+    private static long writeParallel(Spliterator<? extends CharSequence> lines, GatheringByteChannel channel)
+            throws IOException {
+        OrderedWrite write = new OrderedWrite(channel);
+        long leafSize = Math.max(1, lines.estimateSize() / (ForkJoinPool.getCommonPoolParallelism()
+                * PipelineExecutor.LEAVES_PER_WORKER));
+
+        try {
+            PipelineExecutor.invoke(new EncodeTask(write, lines, write.next, leafSize));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return write.lines;
+    }
+
+    /**
+     * Collector encoding the lines into memory; write the result with EncodedLines.writeTo().
+     */
+    public static Collector<CharSequence, ?, EncodedLines> encoding() {
+        return Collector.of(EncodedLines::new, EncodedLines::append, EncodedLines::concat);
+    }
+
+    /**
+     * Encoded lines, held in a list of direct buffers.
+     */
+    public static final class EncodedLines {
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private final Deque<ByteBuffer> spare;
+        private final GatheringByteChannel drainTo;
+        private ByteBuffer current;
+        private CharsetEncoder encoder;
+        private long lines;
+
+        EncodedLines() {
+            this(null, new ArrayDeque<>());
+        }
+
+        /**
+         * @param drainTo channel that full buffers are written to as soon as GATHER_BUFFERS of them are pending, or
+         *                null to keep everything in memory
+         * @param spare empty buffers to fill before allocating new ones, shared by the leaves of a parallel write
+         */
+        private EncodedLines(GatheringByteChannel drainTo, Deque<ByteBuffer> spare) {
+            ByteBuffer first = spare.pollLast();
+
+            this.drainTo = drainTo;
+            this.spare = spare;
+            this.current = first != null ? first : ByteBuffer.allocateDirect(FIRST_BUFFER_BYTES);
+            this.buffers.add(current);
+        }
+
+        public long lines() {
+            return lines;
+        }
+
+        /**
+         * @return number of encoded bytes not written yet
+         */
+        public long bytes() {
+            long bytes = 0;
+
+            for (ByteBuffer buffer : buffers) {
+                bytes += buffer.position();
+            }
+            return bytes;
+        }
+
+        /**
+         * Writes every encoded byte to the channel with gathering writes.
+         *
+         * @return number of lines written
+         */
+        public long writeTo(GatheringByteChannel channel) throws IOException {
+            ByteBuffer[] pending = buffers.toArray(new ByteBuffer[0]);
+
+            for (ByteBuffer buffer : pending) {
+                buffer.flip();
+            }
+            writeFully(channel, pending);
+            buffers.clear();
+            current = null;
+
+            return lines;
+        }
+
+        void append(CharSequence line) {
+            int length = line.length();
+            int i = 0;
+
+            if (current.remaining() >= length) {
+                for (; i < length; i++) {
+                    char c = line.charAt(i);
+
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    current.put((byte) c);
+                }
+            }
+            if (i < length) {
+                encode(line, i, length);
+            }
+
+            if (current.remaining() < LINE_SEPARATOR.length) {
+                nextBuffer();
+            }
+            current.put(LINE_SEPARATOR);
+            lines++;
+        }
+
+        EncodedLines concat(EncodedLines other) {
+            buffers.addAll(other.buffers);
+            current = buffers.get(buffers.size() - 1);
+            lines += other.lines;
+
+            return this;
+        }
+
+        private void encode(CharSequence line, int from, int to) {
+            if (encoder == null) {
+                encoder = StandardCharsets.UTF_8.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+
+            CharBuffer chars = CharBuffer.wrap(line, from, to);
+            encoder.reset();
+
+            while (encoder.encode(chars, current, true).isOverflow()) {
+                nextBuffer();
+            }
+            while (encoder.flush(current).isOverflow()) {
+                nextBuffer();
+            }
+        }
+
+        private void nextBuffer() {
+            if (drainTo != null && buffers.size() >= GATHER_BUFFERS) {
+                drain();
+            }
+
+            ByteBuffer next = spare.pollLast();
+            current = next != null ? next : ByteBuffer.allocateDirect(BUFFER_BYTES);
+            buffers.add(current);
+        }
+
+        /**
+         * Writes every pending buffer to drainTo and keeps them for reuse.
+         */
+        void drain() {
+            try {
+                flushTo(drainTo);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes every pending buffer to the channel and hands them to spare.
+         */
+        void flushTo(GatheringByteChannel channel) throws IOException {
+            ByteBuffer[] pending = buffers.toArray(new ByteBuffer[0]);
+
+            for (ByteBuffer buffer : pending) {
+                buffer.flip();
+            }
+            writeFully(channel, pending);
+            for (ByteBuffer buffer : pending) {
+                buffer.clear();
+                spare.addLast(buffer);
+            }
+            buffers.clear();
+        }
+
+        private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+            int first = 0;
+
+            while (first < buffers.length) {
+                channel.write(buffers, first, buffers.length - first);
+
+                while (first < buffers.length && !buffers[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        }
+    }
+
+    /**
+     * A parallel write: the segments in encounter order, linked from the first one not written yet, and the buffers
+     * of the written ones. One leaf at a time writes; a leaf finishing meanwhile only marks its segment as finished,
+     * and the writing leaf picks it up before it stops.
+     */
+    private static final class OrderedWrite {
+        private final GatheringByteChannel channel;
+        private final Deque<ByteBuffer> spare = new ConcurrentLinkedDeque<>();
+        // guarded by this
+        private Segment next = new Segment(null);
+        private boolean writing;
+        private long lines;
+        private volatile boolean failed;
+
+        OrderedWrite(GatheringByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void finished(Segment segment, EncodedLines encoded) {
+            synchronized (this) {
+                segment.encoded = encoded;
+                if (writing || failed) {
+                    return;
+                }
+                writing = true;
+            }
+
+            for (;;) {
+                Segment ready;
+
+                synchronized (this) {
+                    if (next == null || next.encoded == null) {
+                        writing = false;
+                        return;
+                    }
+                    ready = next;
+                    next = ready.following;
+                    lines += ready.encoded.lines;
+                }
+
+                try {
+                    ready.encoded.flushTo(channel);
+                } catch (IOException e) {
+                    failed = true;
+                    throw new UncheckedIOException(e);
+                }
+                ready.encoded = null;
+            }
+        }
+    }
+
+    /**
+     * Lines of one leaf, in encounter order before the segment following it. Only the task encoding into a segment
+     * links new segments after it, and only before it is finished.
+     */
+    private static final class Segment {
+        Segment following;
+        EncodedLines encoded;
+
+        Segment(Segment following) {
+            this.following = following;
+        }
+    }
+
+    private static final class EncodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final OrderedWrite write;
+        private final Spliterator<? extends CharSequence> lines;
+        private final Segment segment;
+        private final long leafSize;
+
+        EncodeTask(OrderedWrite write, Spliterator<? extends CharSequence> lines, Segment segment, long leafSize) {
+            this.write = write;
+            this.lines = lines;
+            this.segment = segment;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (write.failed) {
+                return;
+            }
+
+            Spliterator<? extends CharSequence> prefix = lines.estimateSize() > leafSize ? lines.trySplit() : null;
+            if (prefix == null) {
+                EncodedLines encoded = new EncodedLines(null, write.spare);
+                lines.forEachRemaining(encoded::append);
+                write.finished(segment, encoded);
+                return;
+            }
+
+            Segment rest = new Segment(segment.following);
+            segment.following = rest;
+            ForkJoinTask.invokeAll(new EncodeTask(write, prefix, segment, leafSize),
+                    new EncodeTask(write, lines, rest, leafSize));
+        }
+    }
+}
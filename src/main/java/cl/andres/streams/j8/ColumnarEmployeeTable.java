@@ -0,0 +1,216 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Struct-of-arrays view of a set of employees.
+ *
+ * Ids and salaries live in their own primitive arrays, and names are dictionary encoded: each row stores an int code
+ * into a table of distinct names. Aggregations over a column become sequential reads of a primitive array instead of
+ * a pointer chase through Employee objects.
+ *
+ * The id and salary spliterators are SIZED and SUBSIZED, so parallel streams split them exactly in half.
+ *
+ * Tables are immutable once built; use a Builder, or of() to copy existing employees.
+ */
+public class ColumnarEmployeeTable {
+
+    private final int size;
+    // Every column array is exactly size long.
+    private final int[] ids;
+    private final double[] salaries;
+    private final int[] nameCodes;
+    private final String[] names;
+
+    private ColumnarEmployeeTable(int size, int[] ids, double[] salaries, int[] nameCodes, String[] names) {
+        this.size = size;
+        this.ids = ids;
+        this.salaries = salaries;
+        this.nameCodes = nameCodes;
+        this.names = names;
+    }
+
+    /**
+     * Wraps existing columns without copying them; every array must hold exactly one value per row, and the caller
+     * must not modify them afterwards.
+     */
+    static ColumnarEmployeeTable ofColumns(int[] ids, double[] salaries, int[] nameCodes, String[] names) {
+        if (salaries.length != ids.length || nameCodes.length != ids.length) {
+            throw new IllegalArgumentException("columns have different lengths: " + ids.length + ", "
+                    + salaries.length + ", " + nameCodes.length);
+        }
+        return new ColumnarEmployeeTable(ids.length, ids, salaries, nameCodes, names);
+    }
+
+    public static ColumnarEmployeeTable of(Employee... employees) {
+        Builder builder = new Builder(employees.length);
+
+        for (Employee employee : employees) {
+            builder.add(employee);
+        }
+
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int id(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    public double salary(int row) {
+        checkRow(row);
+        return salaries[row];
+    }
+
+    public String name(int row) {
+        checkRow(row);
+        return names[nameCodes[row]];
+    }
+
+    /**
+     * @return the dictionary code of the row's name; rows with equal names share the same code
+     */
+    public int nameCode(int row) {
+        checkRow(row);
+        return nameCodes[row];
+    }
+
+    /**
+     * @return number of distinct names in the table
+     */
+    public int distinctNames() {
+        return names.length;
+    }
+
+    public String nameForCode(int code) {
+        return names[code];
+    }
+
+    public Employee employee(int row) {
+        return new Employee(id(row), name(row), salary(row));
+    }
+
+    public IntStream ids() {
+        return Arrays.stream(ids);
+    }
+
+    public DoubleStream salaries() {
+        return Arrays.stream(salaries);
+    }
+
+    public IntStream nameCodes() {
+        return Arrays.stream(nameCodes);
+    }
+
+    public Spliterator.OfInt idSpliterator() {
+        return Arrays.spliterator(ids);
+    }
+
+    public Spliterator.OfDouble salarySpliterator() {
+        return Arrays.spliterator(salaries);
+    }
+
+    /**
+     * Materializes every row back into an Employee; prefer the column streams for aggregations.
+     */
+    public Stream<Employee> employees() {
+        return IntStream.range(0, size).mapToObj(this::employee);
+    }
+
+    /**
+     * Direct access to the salary column for code in this package; callers must not modify it.
+     */
+    double[] salaryColumn() {
+        return salaries;
+    }
+
+    int[] idColumn() {
+        return ids;
+    }
+
+    int[] nameCodeColumn() {
+        return nameCodes;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " outside table of size " + size);
+        }
+    }
+
+    public static class Builder {
+        private int size;
+        private int[] ids;
+        private double[] salaries;
+        private int[] nameCodes;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private String[] names = new String[16];
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int expectedRows) {
+            int capacity = Math.max(expectedRows, 1);
+            this.ids = new int[capacity];
+            this.salaries = new double[capacity];
+            this.nameCodes = new int[capacity];
+        }
+
+        public Builder add(Employee employee) {
+            return add(employee.getId(), employee.getName(), employee.getSalary());
+        }
+
+        public Builder add(int id, String name, double salary) {
+            if (size == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                salaries = Arrays.copyOf(salaries, capacity);
+                nameCodes = Arrays.copyOf(nameCodes, capacity);
+            }
+
+            ids[size] = id;
+            salaries[size] = salary;
+            nameCodes[size] = encode(name);
+            size++;
+
+            return this;
+        }
+
+        public ColumnarEmployeeTable build() {
+            return new ColumnarEmployeeTable(size,
+                    Arrays.copyOf(ids, size),
+                    Arrays.copyOf(salaries, size),
+                    Arrays.copyOf(nameCodes, size),
+                    Arrays.copyOf(names, dictionary.size()));
+        }
+
+        private int encode(String name) {
+            Integer code = dictionary.get(name);
+
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.put(name, code);
+
+                if (code == names.length) {
+                    names = Arrays.copyOf(names, names.length * 2);
+                }
+                names[code] = name;
+            }
+
+            return code;
+        }
+    }
+}
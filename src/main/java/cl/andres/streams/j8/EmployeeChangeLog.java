@@ -0,0 +1,394 @@
+package cl.andres.streams.j8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Collector.Characteristics;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * The current employees, changed only through inserts, deletes, renames and salary updates that are appended to a log,
+ * and groupingBy() views over them that are kept up to date from that log.
+ *
+ * Collecting a groupingBy() again after a few changes scans every employee. A GroupedView instead remembers how far
+ * into the log it has read, and refresh() applies only the changes after that point: each one takes the employee out
+ * of its old group through the downstream's remover and adds it to its new group, so the cost is proportional to the
+ * number of changes, not to the number of employees. When a remover cannot undo a removal, as for a maximum losing
+ * its best element, the group is rebuilt from its members once, after all pending changes have been applied.
+ *
+ * Members of a group stay in the order of the log, which is the order the employees were inserted in; a rename or
+ * salary update keeps an employee's place. A downstream that is not UNORDERED is therefore also rebuilt when a change
+ * puts an employee before the last member of its group, so that a list or the first of equal maxima is the same as
+ * Collectors.groupingBy() over the log's employees would give.
+ *
+ * The log stores its own copies of the employees, and a rename or salary update replaces the copy; the employees
+ * passed to insert() and the ones handed to the views can therefore be raised elsewhere without affecting the log.
+ * Changes are only kept until every open view has read them, so close() views that are no longer needed.
+ *
+ * Every method locks the log, so changes and views may be used from several threads.
+ */
+public class EmployeeChangeLog {
+
+    private static final int MIN_TRIM = 1024;
+
+    private final Map<Integer, Employee> employees = new LinkedHashMap<>();
+    // place of every employee in the order of employees, which a rename or salary update keeps
+    private final Map<Integer, Long> positions = new HashMap<>();
+    private long nextPosition;
+    private final List<Change> changes = new ArrayList<>();
+    private final List<GroupedView<?, ?>> views = new ArrayList<>();
+    // sequence number of changes.get(0); the next change gets firstSequence + changes.size()
+    private long firstSequence;
+
+    public static EmployeeChangeLog of(Employee... employees) {
+        EmployeeChangeLog log = new EmployeeChangeLog();
+
+        for (Employee employee : employees) {
+            log.insert(employee);
+        }
+        return log;
+    }
+
+    /**
+     * @return false if there already is an employee with the same id
+     */
+    public synchronized boolean insert(Employee employee) {
+        Integer id = Objects.requireNonNull(employee.getId(), "id");
+
+        if (employees.containsKey(id)) {
+            return false;
+        }
+
+        Employee copy = new Employee(id, employee.getName(), employee.getSalary());
+        long position = nextPosition++;
+        employees.put(id, copy);
+        positions.put(id, position);
+        append(null, copy, position);
+        return true;
+    }
+
+    /**
+     * @return false if there is no employee with the id
+     */
+    public synchronized boolean delete(int id) {
+        Employee before = employees.remove(id);
+
+        if (before == null) {
+            return false;
+        }
+        append(before, null, positions.remove(id));
+        return true;
+    }
+
+    /**
+     * @return false if there is no employee with the id
+     */
+    public synchronized boolean rename(int id, String name) {
+        Employee before = employees.get(id);
+
+        if (before == null) {
+            return false;
+        }
+        if (!before.getName().equals(name)) {
+            replace(before, new Employee(id, name, before.getSalary()));
+        }
+        return true;
+    }
+
+    /**
+     * @return false if there is no employee with the id
+     */
+    public synchronized boolean updateSalary(int id, double salary) {
+        Employee before = employees.get(id);
+
+        if (before == null) {
+            return false;
+        }
+        if (Double.compare(before.getSalary(), salary) != 0) {
+            replace(before, new Employee(id, before.getName(), salary));
+        }
+        return true;
+    }
+
+    /**
+     * @return the log's copy of the employee, or null if there is none with the id
+     */
+    public synchronized Employee get(int id) {
+        return employees.get(id);
+    }
+
+    public synchronized int size() {
+        return employees.size();
+    }
+
+    /**
+     * @return number of changes made since the log was created
+     */
+    public synchronized long getSequence() {
+        return firstSequence + changes.size();
+    }
+
+    /**
+     * Groups the current employees like Collectors.groupingBy(classifier, downstream) and keeps the groups up to date
+     * with the changes made from now on, until the view is closed.
+     */
+    public synchronized <K, A, R> GroupedView<K, R> groupingBy(
+            Function<? super Employee, ? extends K> classifier,
+            IncrementalCollector<? super Employee, A, R> downstream) {
+        GroupedView<K, R> view = new GroupedView<>(new Groups<>(classifier, downstream), getSequence());
+
+        for (Employee employee : employees.values()) {
+            view.groups.add(employee, positions.get(employee.getId()), null);
+        }
+        views.add(view);
+        return view;
+    }
+
+    private void replace(Employee before, Employee after) {
+        employees.put(after.getId(), after);
+        append(before, after, positions.get(after.getId()));
+    }
+
+    private void append(Employee before, Employee after, long position) {
+        if (views.isEmpty()) {
+            // nobody will read the change
+            firstSequence++;
+        } else {
+            changes.add(new Change(before, after, position));
+        }
+    }
+
+    /**
+     * Drops the changes every view has read, once they are at least half of the log.
+     */
+    private void trim() {
+        long read = firstSequence + changes.size();
+
+        for (GroupedView<?, ?> view : views) {
+            read = Math.min(read, view.cursor);
+        }
+
+        int count = (int) (read - firstSequence);
+        if (count >= MIN_TRIM && count >= changes.size() / 2 || count == changes.size()) {
+            changes.subList(0, count).clear();
+            firstSequence = read;
+        }
+    }
+
+    /**
+     * One change to the employee at a position: before is null for an insert and after is null for a delete.
+     */
+    private static final class Change {
+        final Employee before;
+        final Employee after;
+        final long position;
+
+        Change(Employee before, Employee after, long position) {
+            this.before = before;
+            this.after = after;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The result of groupingBy() per group, brought up to date with the log by refresh() and by every read.
+     */
+    public final class GroupedView<K, R> {
+        private final Groups<K, ?, R> groups;
+        private long cursor;
+        private boolean closed;
+
+        GroupedView(Groups<K, ?, R> groups, long cursor) {
+            this.groups = groups;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Applies the changes made since the last refresh.
+         *
+         * @return the keys of the groups those changes touched, including groups that are now empty
+         */
+        public Set<K> refresh() {
+            synchronized (EmployeeChangeLog.this) {
+                if (closed) {
+                    throw new IllegalStateException("view closed");
+                }
+
+                long end = firstSequence + changes.size();
+                if (cursor == end) {
+                    return Collections.emptySet();
+                }
+
+                Set<K> touched = new HashSet<>();
+                for (int i = (int) (cursor - firstSequence); i < changes.size(); i++) {
+                    Change change = changes.get(i);
+
+                    if (change.before != null) {
+                        groups.remove(change.before, change.position, touched);
+                    }
+                    if (change.after != null) {
+                        groups.add(change.after, change.position, touched);
+                    }
+                }
+                groups.rebuildInvalid();
+                cursor = end;
+                trim();
+                return Collections.unmodifiableSet(touched);
+            }
+        }
+
+        /**
+         * @return the result of the group, or null if it has no members
+         */
+        public R get(K key) {
+            synchronized (EmployeeChangeLog.this) {
+                refresh();
+                return groups.get(key);
+            }
+        }
+
+        /**
+         * @return the result of every group with at least one member
+         */
+        public Map<K, R> snapshot() {
+            synchronized (EmployeeChangeLog.this) {
+                refresh();
+                return groups.snapshot();
+            }
+        }
+
+        /**
+         * @return number of times a group was rebuilt because its downstream could not undo a removal
+         */
+        public long getRebuilds() {
+            synchronized (EmployeeChangeLog.this) {
+                return groups.rebuilds;
+            }
+        }
+
+        /**
+         * Stops following the log, which then no longer keeps changes for this view.
+         */
+        public void close() {
+            synchronized (EmployeeChangeLog.this) {
+                if (!closed) {
+                    closed = true;
+                    views.remove(this);
+                    trim();
+                }
+            }
+        }
+    }
+
+    /**
+     * The groups of a view, each with its members by position and the downstream's container over them.
+     */
+    private static final class Groups<K, A, R> {
+        private final Function<? super Employee, ? extends K> classifier;
+        private final IncrementalCollector<? super Employee, A, R> downstream;
+        private final BiConsumer<A, ? super Employee> accumulator;
+        private final BiPredicate<A, ? super Employee> remover;
+        private final boolean unordered;
+        private final Map<K, Group<A>> groups = new HashMap<>();
+        private final Map<Integer, K> keys = new HashMap<>();
+        private final Set<Group<A>> invalid = new HashSet<>();
+        private long rebuilds;
+
+        Groups(Function<? super Employee, ? extends K> classifier,
+               IncrementalCollector<? super Employee, A, R> downstream) {
+            this.classifier = classifier;
+            this.downstream = downstream;
+            this.accumulator = downstream.accumulator();
+            this.remover = downstream.remover();
+            this.unordered = downstream.characteristics().contains(Characteristics.UNORDERED);
+        }
+
+        void add(Employee employee, long position, Set<K> touched) {
+            K key = classifier.apply(employee);
+            Group<A> group = groups.get(key);
+
+            if (group == null) {
+                group = new Group<>(downstream.supplier().get());
+                groups.put(key, group);
+            }
+            boolean last = group.members.isEmpty() || group.members.lastKey() < position;
+            group.members.put(position, employee);
+            keys.put(employee.getId(), key);
+            if (!invalid.contains(group)) {
+                if (last || unordered) {
+                    accumulator.accept(group.container, employee);
+                } else {
+                    // accumulating would put the employee after members that come after it
+                    invalid.add(group);
+                }
+            }
+            if (touched != null) {
+                touched.add(key);
+            }
+        }
+
+        void remove(Employee employee, long position, Set<K> touched) {
+            K key = keys.remove(employee.getId());
+            Group<A> group = groups.get(key);
+            Employee member = group.members.remove(position);
+
+            touched.add(key);
+            if (group.members.isEmpty()) {
+                groups.remove(key);
+                invalid.remove(group);
+            } else if (!invalid.contains(group) && !remover.test(group.container, member)) {
+                invalid.add(group);
+            }
+        }
+
+        void rebuildInvalid() {
+            for (Group<A> group : invalid) {
+                A container = downstream.supplier().get();
+
+                for (Employee member : group.members.values()) {
+                    accumulator.accept(container, member);
+                }
+                group.container = container;
+                rebuilds++;
+            }
+            invalid.clear();
+        }
+
+        R get(K key) {
+            Group<A> group = groups.get(key);
+            return group == null ? null : downstream.finisher().apply(group.container);
+        }
+
+        Map<K, R> snapshot() {
+            Map<K, R> snapshot = new HashMap<>();
+
+            for (Map.Entry<K, Group<A>> entry : groups.entrySet()) {
+                snapshot.put(entry.getKey(), downstream.finisher().apply(entry.getValue().container));
+            }
+            return Collections.unmodifiableMap(snapshot);
+        }
+    }
+
+    /**
+     * Members in the order of the log, which is also the order a rebuild adds them in.
+     */
+    private static final class Group<A> {
+        final TreeMap<Long, Employee> members = new TreeMap<>();
+        A container;
+
+        Group(A container) {
+            this.container = container;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package cl.andres.streams.j8;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * A store employees can be looked up in by id.
+ */
+@FunctionalInterface
+public interface EmployeeLookup {
+
+    /**
+     * @return the employee with the given id, or null if there is none
+     */
+    Employee findById(int id);
+}
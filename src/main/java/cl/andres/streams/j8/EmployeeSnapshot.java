@@ -0,0 +1,239 @@
+package cl.andres.streams.j8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Versioned binary snapshot of an employee data set, read through a memory map.
+ *
+ * Layout, all numbers big-endian:
+ *
+ * <pre>
+ * header       int magic "EMPS", short version, short reserved, int rows, int names, int poolBytes, int reserved
+ * salaries     double[rows]
+ * ids          int[rows]
+ * nameCodes    int[rows]       index of each row's name
+ * nameOffsets  int[names + 1]  start of every name in the pool, plus the end of the pool
+ * pool         byte[poolBytes] the distinct names, UTF-8 encoded
+ * </pre>
+ *
+ * Columns have a fixed width, so opening a snapshot only checks the header: a row is read straight from the mapping
+ * at a computed offset, and a name is decoded once, the first time it is used. The columns follow the
+ * ColumnarEmployeeTable layout and toTable() copies them in bulk.
+ */
+public final class EmployeeSnapshot {
+
+    public static final int MAGIC = 0x454D5053;
+    public static final short VERSION = 1;
+
+    static final int HEADER_BYTES = 24;
+
+    private final int rows;
+    private final DoubleBuffer salaries;
+    private final IntBuffer ids;
+    private final IntBuffer nameCodes;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer pool;
+    private final AtomicReferenceArray<String> names;
+
+    private EmployeeSnapshot(ByteBuffer mapped, Path path) throws IOException {
+        if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not an employee snapshot");
+        }
+        short version = mapped.getShort(4);
+        if (version != VERSION) {
+            throw new IOException(path + " has snapshot version " + version + ", expected " + VERSION);
+        }
+
+        this.rows = mapped.getInt(8);
+        int nameCount = mapped.getInt(12);
+        int poolBytes = mapped.getInt(16);
+
+        long expected = HEADER_BYTES + 16L * rows + 4L * (nameCount + 1) + poolBytes;
+        if (rows < 0 || nameCount < 0 || poolBytes < 0 || expected != mapped.capacity()) {
+            throw new IOException(path + " is truncated or corrupt: expected " + expected + " bytes, found "
+                    + mapped.capacity());
+        }
+
+        int offset = HEADER_BYTES;
+        this.salaries = section(mapped, offset, 8 * rows).asDoubleBuffer();
+        offset += 8 * rows;
+        this.ids = section(mapped, offset, 4 * rows).asIntBuffer();
+        offset += 4 * rows;
+        this.nameCodes = section(mapped, offset, 4 * rows).asIntBuffer();
+        offset += 4 * rows;
+        this.nameOffsets = section(mapped, offset, 4 * (nameCount + 1)).asIntBuffer();
+        offset += 4 * (nameCount + 1);
+        this.pool = section(mapped, offset, poolBytes);
+        this.names = new AtomicReferenceArray<>(nameCount);
+    }
+
+    /**
+     * Maps the snapshot file; the mapping stays valid for as long as the returned object is reachable.
+     */
+    public static EmployeeSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is larger than 2 GB, which a single snapshot cannot be");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new EmployeeSnapshot(mapped, path);
+        }
+    }
+
+    public static void write(Employee[] employees, Path path) throws IOException {
+        write(ColumnarEmployeeTable.of(employees), path);
+    }
+
+    public static void write(ColumnarEmployeeTable table, Path path) throws IOException {
+        int rows = table.size();
+        int nameCount = table.distinctNames();
+        byte[][] encodedNames = new byte[nameCount][];
+        long poolBytes = 0;
+
+        for (int code = 0; code < nameCount; code++) {
+            encodedNames[code] = table.nameForCode(code).getBytes(StandardCharsets.UTF_8);
+            poolBytes += encodedNames[code].length;
+        }
+        if (HEADER_BYTES + 16L * rows + 4L * (nameCount + 1) + poolBytes > Integer.MAX_VALUE) {
+            throw new IOException("table of " + rows + " rows does not fit into a single snapshot");
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path),
+                1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(rows);
+            out.writeInt(nameCount);
+            out.writeInt((int) poolBytes);
+            out.writeInt(0);
+
+            for (double salary : table.salaryColumn()) {
+                out.writeDouble(salary);
+            }
+            for (int id : table.idColumn()) {
+                out.writeInt(id);
+            }
+            for (int code : table.nameCodeColumn()) {
+                out.writeInt(code);
+            }
+
+            int nameOffset = 0;
+            for (byte[] name : encodedNames) {
+                out.writeInt(nameOffset);
+                nameOffset += name.length;
+            }
+            out.writeInt(nameOffset);
+
+            for (byte[] name : encodedNames) {
+                out.write(name);
+            }
+        }
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public int id(int row) {
+        return ids.get(row);
+    }
+
+    public double salary(int row) {
+        return salaries.get(row);
+    }
+
+    public String name(int row) {
+        return nameForCode(nameCodes.get(row));
+    }
+
+    public Employee employee(int row) {
+        return new Employee(id(row), name(row), salary(row));
+    }
+
+    public IntStream ids() {
+        return IntStream.range(0, rows).map(ids::get);
+    }
+
+    public DoubleStream salaries() {
+        return IntStream.range(0, rows).mapToDouble(salaries::get);
+    }
+
+    public Stream<Employee> employees() {
+        return IntStream.range(0, rows).mapToObj(this::employee);
+    }
+
+    /**
+     * Copies the snapshot into a ColumnarEmployeeTable with one bulk read per column.
+     */
+    public ColumnarEmployeeTable toTable() {
+        int[] idColumn = new int[rows];
+        double[] salaryColumn = new double[rows];
+        int[] nameCodeColumn = new int[rows];
+        String[] nameColumn = new String[names.length()];
+
+        ids.duplicate().get(idColumn);
+        salaries.duplicate().get(salaryColumn);
+        nameCodes.duplicate().get(nameCodeColumn);
+        for (int code = 0; code < nameColumn.length; code++) {
+            nameColumn[code] = nameForCode(code);
+        }
+
+        return ColumnarEmployeeTable.ofColumns(idColumn, salaryColumn, nameCodeColumn, nameColumn);
+    }
+
+    public IndexedEmployeeRepository toRepository() {
+        IndexedEmployeeRepository repository = new IndexedEmployeeRepository(rows);
+
+        for (int row = 0; row < rows; row++) {
+            repository.add(employee(row));
+        }
+        return repository;
+    }
+
+    private String nameForCode(int code) {
+        String name = names.get(code);
+
+        if (name == null) {
+            int start = nameOffsets.get(code);
+            int end = nameOffsets.get(code + 1);
+            byte[] bytes = new byte[end - start];
+
+            ByteBuffer view = pool.duplicate();
+            view.position(start);
+            view.get(bytes);
+
+            name = new String(bytes, StandardCharsets.UTF_8);
+            names.lazySet(code, name);
+        }
+        return name;
+    }
+
+    private static ByteBuffer section(ByteBuffer mapped, int offset, int length) {
+        ByteBuffer view = mapped.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+
+        return view.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+}
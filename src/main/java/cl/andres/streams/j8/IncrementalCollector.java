@@ -0,0 +1,76 @@
+package cl.andres.streams.j8;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector.Characteristics;
+
+/**
+ * A Collector that can also take elements back out of its container, for results that are maintained as their input
+ * changes instead of being collected again.
+ *
+ * The remover undoes one earlier accumulation of an equal element and returns true, or returns false when the
+ * container cannot be updated that way, as for a maximum that loses its best element; the caller then rebuilds the
+ * container from the remaining elements. A false return may leave the container in any state, since it is discarded.
+ *
+ * Accumulating appends an element after the ones already in the container. A collector whose result does not depend
+ * on that order, such as a count, reports Characteristics.UNORDERED, like a Collector; any other one is rebuilt
+ * when an element has to go before the elements already accumulated.
+ *
+ * IncrementalCollectors has the counterparts of the usual Collectors.
+ */
+public interface IncrementalCollector<T, A, R> {
+
+    Supplier<A> supplier();
+
+    BiConsumer<A, T> accumulator();
+
+    BiPredicate<A, T> remover();
+
+    Function<A, R> finisher();
+
+    /**
+     * @return UNORDERED if the result does not depend on the order of the elements; no other characteristic applies
+     */
+    default Set<Characteristics> characteristics() {
+        return Collections.emptySet();
+    }
+
+    static <T, A, R> IncrementalCollector<T, A, R> of(Supplier<A> supplier, BiConsumer<A, T> accumulator,
+                                                       BiPredicate<A, T> remover, Function<A, R> finisher,
+                                                       Characteristics... characteristics) {
+        Set<Characteristics> set = characteristics.length == 0 ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.of(characteristics[0], characteristics));
+
+        return new IncrementalCollector<T, A, R>() {
+            @Override
+            public Supplier<A> supplier() {
+                return supplier;
+            }
+
+            @Override
+            public BiConsumer<A, T> accumulator() {
+                return accumulator;
+            }
+
+            @Override
+            public BiPredicate<A, T> remover() {
+                return remover;
+            }
+
+            @Override
+            public Function<A, R> finisher() {
+                return finisher;
+            }
+
+            @Override
+            public Set<Characteristics> characteristics() {
+                return set;
+            }
+        };
+    }
+}
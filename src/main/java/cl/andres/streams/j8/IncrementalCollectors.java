@@ -0,0 +1,127 @@
+package cl.andres.streams.j8;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collector.Characteristics;
+
+/**
+ * IncrementalCollector counterparts of Collectors.toList(), counting(), mapping(), reducing(), maxBy() and minBy().
+ *
+ * Counting and reductions with an inverse undo a removal in constant time. maxBy() and minBy() only need to rebuild
+ * when the removed element is the current result, and reducing() without an inverse rebuilds on every removal.
+ * counting() and reducing() with an inverse are UNORDERED; the others keep the result Collectors would give for the
+ * elements in order, where maxBy() and minBy() return the first of equal elements.
+ */
+public final class IncrementalCollectors {
+
+    private IncrementalCollectors() {
+    }
+
+    /**
+     * The elements in the order they were added; a removal takes out the first equal element, in linear time.
+     */
+    public static <T> IncrementalCollector<T, ?, List<T>> toList() {
+        return IncrementalCollector.<T, List<T>, List<T>>of(ArrayList::new, List::add, List::remove, ArrayList::new);
+    }
+
+    public static <T> IncrementalCollector<T, ?, Long> counting() {
+        return IncrementalCollector.<T, long[], Long>of(() -> new long[1],
+                (count, element) -> count[0]++,
+                (count, element) -> {
+                    count[0]--;
+                    return true;
+                },
+                count -> count[0],
+                Characteristics.UNORDERED);
+    }
+
+    /**
+     * The mapper must return equal results for equal elements, so that a removal reaches the downstream as the value
+     * its addition did.
+     */
+    public static <T, U, A, R> IncrementalCollector<T, ?, R> mapping(Function<? super T, ? extends U> mapper,
+                                                                     IncrementalCollector<? super U, A, R> downstream) {
+        BiConsumer<A, ? super U> accumulator = downstream.accumulator();
+        BiPredicate<A, ? super U> remover = downstream.remover();
+
+        return IncrementalCollector.<T, A, R>of(downstream.supplier(),
+                (container, element) -> accumulator.accept(container, mapper.apply(element)),
+                (container, element) -> remover.test(container, mapper.apply(element)),
+                downstream.finisher(),
+                downstream.characteristics().toArray(new Characteristics[0]));
+    }
+
+    /**
+     * Reduction with an inverse, such as Double::sum and subtraction, which undoes every removal in constant time. The
+     * operation must also be commutative, since the result does not follow the order of the elements.
+     *
+     * @param inverse given the reduced value and a removed element, returns the value without that element
+     */
+    public static <T> IncrementalCollector<T, ?, T> reducing(T identity, BinaryOperator<T> op,
+                                                             BinaryOperator<T> inverse) {
+        return IncrementalCollector.<T, Value<T>, T>of(() -> new Value<>(identity),
+                (value, element) -> value.value = op.apply(value.value, element),
+                (value, element) -> {
+                    value.value = inverse.apply(value.value, element);
+                    return true;
+                },
+                value -> value.value,
+                Characteristics.UNORDERED);
+    }
+
+    /**
+     * Reduction without an inverse, so every removal rebuilds the group.
+     */
+    public static <T> IncrementalCollector<T, ?, Optional<T>> reducing(BinaryOperator<T> op) {
+        return IncrementalCollector.<T, Best<T>, Optional<T>>of(Best::new,
+                (best, element) -> best.offer(element, op),
+                (best, element) -> false,
+                Best::toOptional);
+    }
+
+    /**
+     * Removing an element less than the maximum keeps the maximum; removing the maximum, or an element equal to it,
+     * rebuilds the group.
+     */
+    public static <T> IncrementalCollector<T, ?, Optional<T>> maxBy(Comparator<? super T> comparator) {
+        BinaryOperator<T> max = BinaryOperator.maxBy(comparator);
+
+        return IncrementalCollector.<T, Best<T>, Optional<T>>of(Best::new,
+                (best, element) -> best.offer(element, max),
+                (best, element) -> best.present && comparator.compare(element, best.value) < 0,
+                Best::toOptional);
+    }
+
+    public static <T> IncrementalCollector<T, ?, Optional<T>> minBy(Comparator<? super T> comparator) {
+        Comparator<T> reversed = (a, b) -> comparator.compare(b, a);
+        return maxBy(reversed);
+    }
+
+    private static final class Value<T> {
+        T value;
+
+        Value(T value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Best<T> {
+        T value;
+        boolean present;
+
+        void offer(T element, BinaryOperator<T> op) {
+            value = present ? op.apply(value, element) : element;
+            present = true;
+        }
+
+        Optional<T> toOptional() {
+            return present ? Optional.of(value) : Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Employee repository backed by an open-addressing int -> Employee index.
+ *
+ * Ids are kept in a primitive int[] so lookups never box, and a lookup costs one hash plus a short linear probe
+ * instead of a scan over every employee.
+ *
+ * Reads are lock-free and may run concurrently with add(). Writers are serialized on the repository; a slot's id is
+ * written before its employee is published through the AtomicReferenceArray, so a reader that sees the employee also
+ * sees its id. Growing the table builds a complete new one and publishes it through a volatile field.
+ */
+public class IndexedEmployeeRepository implements EmployeeLookup {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final class Table {
+        final int[] ids;
+        final AtomicReferenceArray<Employee> employees;
+        final int mask;
+
+        Table(int capacity) {
+            this.ids = new int[capacity];
+            this.employees = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        Employee get(int id) {
+            for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+                Employee employee = employees.get(slot);
+
+                if (employee == null) {
+                    return null;
+                }
+                if (ids[slot] == id) {
+                    return employee;
+                }
+            }
+        }
+
+        /**
+         * Only called while holding the repository lock.
+         *
+         * @return the employee previously stored under the id, or null if the id took a new slot
+         */
+        Employee put(int id, Employee employee) {
+            for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+                Employee current = employees.get(slot);
+
+                if (current == null) {
+                    ids[slot] = id;
+                    employees.set(slot, employee);
+                    return null;
+                }
+                if (ids[slot] == id) {
+                    employees.set(slot, employee);
+                    return current;
+                }
+            }
+        }
+    }
+
+    private volatile Table table;
+    private volatile int size;
+
+    public IndexedEmployeeRepository() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of employees the repository should hold without growing
+     */
+    public IndexedEmployeeRepository(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+        }
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    public static IndexedEmployeeRepository of(Employee... employees) {
+        IndexedEmployeeRepository repository = new IndexedEmployeeRepository(employees.length);
+        repository.addAll(employees);
+        return repository;
+    }
+
+    /**
+     * Adds the employee, replacing any employee already stored under the same id.
+     */
+    public synchronized void add(Employee employee) {
+        int id = employee.getId();
+        Table current = table;
+
+        if ((size + 1) * 2 > current.ids.length) {
+            current = resize(current.ids.length * 2);
+        }
+        if (current.put(id, employee) == null) {
+            size++;
+        }
+    }
+
+    public synchronized void addAll(Employee... employees) {
+        if ((size + employees.length) * 2 > table.ids.length) {
+            resize(capacityFor(size + employees.length));
+        }
+        for (Employee employee : employees) {
+            add(employee);
+        }
+    }
+
+    @Override
+    public Employee findById(int id) {
+        return table.get(id);
+    }
+
+    /**
+     * Resolves every id of the array against a single snapshot of the index.
+     *
+     * @return the employees found, in the order of their ids; unknown ids are skipped
+     */
+    public Employee[] findAllById(int[] ids) {
+        Table snapshot = table;
+        Employee[] found = new Employee[ids.length];
+        int count = 0;
+
+        for (int id : ids) {
+            Employee employee = snapshot.get(id);
+
+            if (employee != null) {
+                found[count++] = employee;
+            }
+        }
+
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Stream version of findAllById(int[]); the stream keeps the ids primitive until they are resolved, and all of
+     * them are resolved against the index as it was when this method was called.
+     */
+    public Stream<Employee> findAllById(IntStream ids) {
+        Table snapshot = table;
+
+        return ids.mapToObj(snapshot::get).filter(employee -> employee != null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the employees currently held, in no particular order
+     */
+    public Employee[] toArray() {
+        Table snapshot = table;
+        Employee[] employees = new Employee[size];
+        int count = 0;
+
+        for (int slot = 0; slot < snapshot.ids.length; slot++) {
+            Employee employee = snapshot.employees.get(slot);
+
+            if (employee != null) {
+                if (count == employees.length) {
+                    employees = Arrays.copyOf(employees, count * 2 + 1);
+                }
+                employees[count++] = employee;
+            }
+        }
+
+        return count == employees.length ? employees : Arrays.copyOf(employees, count);
+    }
+
+    private Table resize(int capacity) {
+        Table current = table;
+        Table grown = new Table(capacity);
+
+        for (int slot = 0; slot < current.ids.length; slot++) {
+            Employee employee = current.employees.get(slot);
+
+            if (employee != null) {
+                grown.put(current.ids[slot], employee);
+            }
+        }
+
+        table = grown;
+        return grown;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    /**
+     * Spreads sequential ids over the table (murmur3 finalizer).
+     */
+    static int mix(int id) {
+        int h = id * 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,400 @@
+package cl.andres.streams.j8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.Collector;
+
+/**
+ * joining() collectors that size their output before writing a single char.
+ *
+ * Collectors.joining() appends every element to a StringJoiner, whose StringBuilder grows by copying everything
+ * appended so far, and a parallel stream copies its partial strings again when they are merged. These collectors only
+ * gather references to the elements (partial results are merged by copying references), and produce a Joined that
+ * knows its exact length: toString() allocates its buffer once, and the UTF-8 writers encode the elements straight
+ * into a ByteBuffer, a byte[] or an OutputStream without building the joined String at all.
+ *
+ * The elements are read when the Joined is written, not when they are collected, so mutable CharSequences must not
+ * change in between.
+ */
+public final class JoiningCollectors {
+
+    static final int OUTPUT_CHUNK_BYTES = 1 << 16;
+    static final int MAX_STRING_LENGTH = Integer.MAX_VALUE - 8;
+
+    private JoiningCollectors() {
+    }
+
+    public static Collector<CharSequence, ?, Joined> joining(CharSequence delimiter) {
+        return joining(delimiter, "", "");
+    }
+
+    public static Collector<CharSequence, ?, Joined> joining(CharSequence delimiter, CharSequence prefix,
+                                                             CharSequence suffix) {
+        String delimiterString = delimiter.toString();
+        String prefixString = prefix.toString();
+        String suffixString = suffix.toString();
+
+        return Collector.of(Parts::new, Parts::add, Parts::addAll,
+                parts -> new Joined(parts.elements(), delimiterString, prefixString, suffixString));
+    }
+
+    /**
+     * The collected elements in encounter order, grown like an ArrayList.
+     */
+    private static final class Parts {
+        private CharSequence[] elements = new CharSequence[16];
+        private int size;
+
+        void add(CharSequence element) {
+            ensureCapacity(size + 1);
+            elements[size++] = element == null ? "null" : element;
+        }
+
+        Parts addAll(Parts other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.elements, 0, elements, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        CharSequence[] elements() {
+            return Arrays.copyOf(elements, size);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity < 0) {
+                throw new OutOfMemoryError("too many elements to join");
+            }
+            if (capacity > elements.length) {
+                elements = Arrays.copyOf(elements, Math.max(capacity, elements.length + (elements.length >> 1)));
+            }
+        }
+    }
+
+    /**
+     * The result of a joining collector: prefix, the elements separated by the delimiter, and suffix.
+     */
+    public static final class Joined implements CharSequence {
+        private final CharSequence[] elements;
+        private final String delimiter;
+        private final String prefix;
+        private final String suffix;
+        private final long length;
+        private long utf8Length = -1;
+        private String string;
+
+        Joined(CharSequence[] elements, String delimiter, String prefix, String suffix) {
+            long length = prefix.length() + suffix.length();
+
+            for (CharSequence element : elements) {
+                length += element.length();
+            }
+            if (elements.length > 1) {
+                length += (long) delimiter.length() * (elements.length - 1);
+            }
+
+            this.elements = elements;
+            this.delimiter = delimiter;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.length = length;
+        }
+
+        public int getElementCount() {
+            return elements.length;
+        }
+
+        /**
+         * Length in chars, which may exceed what a String can hold when the result is only meant to be encoded.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @throws IllegalStateException if the joined chars do not fit in a String
+         */
+        @Override
+        public int length() {
+            return checkedLength();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        /**
+         * The joined String, built in a buffer allocated once with the exact length.
+         */
+        @Override
+        public String toString() {
+            if (string == null) {
+                StringBuilder builder = new StringBuilder(checkedLength());
+
+                builder.append(prefix);
+                for (int i = 0; i < elements.length; i++) {
+                    if (i > 0) {
+                        builder.append(delimiter);
+                    }
+                    builder.append(elements[i]);
+                }
+                string = builder.append(suffix).toString();
+            }
+            return string;
+        }
+
+
+        /**
+         * Number of bytes the UTF-8 encoding takes, the same as toString().getBytes(UTF_8).length.
+         */
+        public long getUtf8Length() {
+            if (utf8Length < 0) {
+                utf8Length = encodeUnchecked(new Utf8Encoder(null, 0, 0, null));
+            }
+            return utf8Length;
+        }
+
+        /**
+         * The same bytes as toString().getBytes(UTF_8), encoded into an array of the exact size.
+         */
+        public byte[] toUtf8() {
+            long size = getUtf8Length();
+
+            if (size > MAX_STRING_LENGTH) {
+                throw new IllegalStateException("joined UTF-8 of " + size + " bytes does not fit in an array");
+            }
+
+            byte[] bytes = new byte[(int) size];
+            encodeUnchecked(new Utf8Encoder(bytes, 0, bytes.length, null));
+            return bytes;
+        }
+
+        /**
+         * Encodes the joined chars as UTF-8 at the buffer's position; a heap buffer is encoded into in place, a direct
+         * one through chunks of at most OUTPUT_CHUNK_BYTES.
+         *
+         * @throws BufferOverflowException if the buffer has less than getUtf8Length() bytes remaining, in which case
+         *                                 nothing is written
+         */
+        public void writeUtf8(ByteBuffer buffer) {
+            long size = getUtf8Length();
+
+            if (buffer.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+
+            if (buffer.hasArray()) {
+                int offset = buffer.arrayOffset() + buffer.position();
+                encodeUnchecked(new Utf8Encoder(buffer.array(), offset, offset + (int) size, null));
+                buffer.position(buffer.position() + (int) size);
+                return;
+            }
+
+            byte[] chunk = chunk(size);
+            encodeUnchecked(new Utf8Encoder(chunk, 0, chunk.length, count -> buffer.put(chunk, 0, count)));
+        }
+
+        /**
+         * Encodes the joined chars as UTF-8 into the stream, through a single reused buffer of at most
+         * OUTPUT_CHUNK_BYTES.
+         *
+         * @return number of bytes written
+         */
+        public long writeUtf8(OutputStream out) throws IOException {
+            byte[] chunk = chunk(3 * length);
+            return encode(new Utf8Encoder(chunk, 0, chunk.length, count -> out.write(chunk, 0, count)));
+        }
+
+        private static byte[] chunk(long maxBytes) {
+            return new byte[(int) Math.max(Math.min(OUTPUT_CHUNK_BYTES, maxBytes), Utf8Encoder.MAX_BYTES_PER_CHAR)];
+        }
+
+        /**
+         * @return number of bytes encoded
+         */
+        private long encode(Utf8Encoder encoder) throws IOException {
+            encoder.encode(prefix);
+            for (int i = 0; i < elements.length; i++) {
+                if (i > 0) {
+                    encoder.encode(delimiter);
+                }
+                encoder.encode(elements[i]);
+            }
+            encoder.encode(suffix);
+            return encoder.finish();
+        }
+
+        /**
+         * For encoders that count or fill an array or ByteBuffer, which never fail with an IOException.
+         */
+        private long encodeUnchecked(Utf8Encoder encoder) {
+            try {
+                return encode(encoder);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int checkedLength() {
+            if (length > MAX_STRING_LENGTH) {
+                throw new IllegalStateException("joined length " + length + " does not fit in a String");
+            }
+            return (int) length;
+        }
+    }
+
+    private interface Drain {
+
+        /**
+         * Takes the first count bytes of the encoder's array, which is then reused from the start.
+         */
+        void drain(int count) throws IOException;
+    }
+
+    /**
+     * UTF-8 encoder over a sequence of CharSequences that pairs surrogates across their boundaries and replaces an
+     * unpaired surrogate with '?', as String.getBytes(UTF_8) does.
+     *
+     * It encodes into bytes[from, to); with a drain, the array is handed to the drain whenever less than
+     * MAX_BYTES_PER_CHAR bytes are left, otherwise it must be large enough for everything. Without an array it only
+     * counts bytes.
+     */
+    private static final class Utf8Encoder {
+        static final int MAX_BYTES_PER_CHAR = 4;
+
+        private final byte[] bytes;
+        private final int from;
+        private final int to;
+        private final Drain drain;
+        private int position;
+        private long drained;
+        private char pendingHigh;
+
+        Utf8Encoder(byte[] bytes, int from, int to, Drain drain) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+            this.drain = drain;
+            this.position = from;
+        }
+
+        void encode(CharSequence chars) throws IOException {
+            if (bytes == null) {
+                count(chars);
+                return;
+            }
+
+            byte[] bytes = this.bytes;
+            int position = this.position;
+            int limit = drain == null ? Integer.MAX_VALUE : to - MAX_BYTES_PER_CHAR;
+
+            for (int i = 0, length = chars.length(); i < length; i++) {
+                char c = chars.charAt(i);
+
+                if (position > limit) {
+                    position = drain(position);
+                }
+
+                if (pendingHigh != 0) {
+                    char high = pendingHigh;
+                    pendingHigh = 0;
+
+                    if (Character.isLowSurrogate(c)) {
+                        int codePoint = Character.toCodePoint(high, c);
+                        bytes[position++] = (byte) (0xf0 | (codePoint >> 18));
+                        bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                        bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                        bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                        continue;
+                    }
+                    bytes[position++] = '?';
+                    if (position > limit) {
+                        position = drain(position);
+                    }
+                }
+
+                if (c < 0x80) {
+                    bytes[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[position++] = (byte) (0xc0 | (c >> 6));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c)) {
+                    pendingHigh = c;
+                } else if (Character.isLowSurrogate(c)) {
+                    bytes[position++] = '?';
+                } else {
+                    bytes[position++] = (byte) (0xe0 | (c >> 12));
+                    bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[position++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            this.position = position;
+        }
+
+        /**
+         * Encodes a trailing unpaired surrogate and drains what is left.
+         *
+         * @return total number of bytes encoded
+         */
+        long finish() throws IOException {
+            if (pendingHigh != 0) {
+                pendingHigh = 0;
+                if (bytes == null) {
+                    drained++;
+                } else {
+                    bytes[position++] = '?';
+                }
+            }
+            if (drain != null) {
+                position = drain(position);
+            }
+            return drained + position - from;
+        }
+
+        private void count(CharSequence chars) {
+            long count = 0;
+
+            for (int i = 0, length = chars.length(); i < length; i++) {
+                char c = chars.charAt(i);
+
+                if (pendingHigh != 0) {
+                    pendingHigh = 0;
+                    if (Character.isLowSurrogate(c)) {
+                        count += 4;
+                        continue;
+                    }
+                    count++;
+                }
+
+                if (c < 0x80) {
+                    count++;
+                } else if (c < 0x800) {
+                    count += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    pendingHigh = c;
+                } else if (Character.isLowSurrogate(c)) {
+                    count++;
+                } else {
+                    count += 3;
+                }
+            }
+            drained += count;
+        }
+
+        private int drain(int position) throws IOException {
+            drain.drain(position - from);
+            drained += position - from;
+            return from;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.IntStream;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Stable sorts that extract each element's key once instead of calling a comparator O(n log n) times.
+ *
+ * sorted((e1, e2) -> e1.getName().compareTo(e2.getName())) follows two references and walks two Strings for every
+ * comparison. Here the keys are read once into a long[] next to an int[] of element indexes, the two arrays are
+ * sorted together, and the elements are finally copied out in the order of the sorted indexes.
+ *
+ * Int keys are packed with their index into a single long and sorted with Arrays.sort()/parallelSort(); the index in
+ * the low bits keeps equal keys in their original order. Other keys are sorted with a stable merge sort, forked
+ * over the common pool in parallel mode. A String key is reduced to its first four chars packed into a long, in the
+ * order String.compareTo() gives them; runs of equal prefixes are then sorted again by their next four chars, and so
+ * on, so that not a single String comparison is made.
+ *
+ * Every method returns a new array ordered like a stable sort by the key (the same order sorted() gives for the
+ * equivalent comparator) and leaves the input untouched.
+ */
+public final class KeyExtractedSort {
+
+    static final int MERGE_LEAF_SIZE = 8192;
+    static final int INSERTION_SORT_SIZE = 32;
+    static final int NAME_PREFIX_CHARS = 4;
+
+    private KeyExtractedSort() {
+    }
+
+    public static Employee[] sortById(Employee[] employees, boolean parallel) {
+        return sortedByInt(employees, Employee::getId, parallel);
+    }
+
+    public static Employee[] sortBySalary(Employee[] employees, boolean parallel) {
+        return sortedByDouble(employees, Employee::getSalary, parallel);
+    }
+
+    public static Employee[] sortByName(Employee[] employees, boolean parallel) {
+        return sortedByString(employees, Employee::getName, parallel);
+    }
+
+    public static <T> T[] sortedByInt(T[] items, ToIntFunction<? super T> key, boolean parallel) {
+        long[] packed = new long[items.length];
+
+        fill(packed, i -> ((long) key.applyAsInt(items[i]) << 32) | i, parallel);
+        if (parallel) {
+            Arrays.parallelSort(packed);
+        } else {
+            Arrays.sort(packed);
+        }
+
+        return reorder(items, i -> (int) packed[i], parallel);
+    }
+
+    public static <T> T[] sortedByLong(T[] items, ToLongFunction<? super T> key, boolean parallel) {
+        long[] keys = new long[items.length];
+
+        fill(keys, i -> key.applyAsLong(items[i]), parallel);
+        return sortByKeys(items, keys, parallel);
+    }
+
+    /**
+     * Keys are ordered like Double.compare(): -0.0 before 0.0 and NaN last.
+     */
+    public static <T> T[] sortedByDouble(T[] items, ToDoubleFunction<? super T> key, boolean parallel) {
+        long[] keys = new long[items.length];
+
+        fill(keys, i -> TopKCollectors.sortableBits(key.applyAsDouble(items[i])), parallel);
+        return sortByKeys(items, keys, parallel);
+    }
+
+    /**
+     * Orders by String.compareTo(); the key of an element must not be null.
+     */
+    public static <T> T[] sortedByString(T[] items, Function<? super T, String> key, boolean parallel) {
+        String[] strings = new String[items.length];
+        long[] keys = new long[items.length];
+
+        fill(keys, i -> {
+            strings[i] = key.apply(items[i]);
+            return prefix(strings[i], 0);
+        }, parallel);
+
+        int[] order = sortByKeys(keys, parallel);
+        StringRefinement refinement = new StringRefinement(strings, keys, order);
+        int[] runs = refinement.runs(0, order.length);
+
+        if (parallel) {
+            IntStream.range(0, runs.length / 2).parallel()
+                    .forEach(run -> refinement.refine(runs[2 * run], runs[2 * run + 1], NAME_PREFIX_CHARS));
+        } else {
+            for (int run = 0; run < runs.length / 2; run++) {
+                refinement.refine(runs[2 * run], runs[2 * run + 1], NAME_PREFIX_CHARS);
+            }
+        }
+        return reorder(items, order, parallel);
+    }
+
+    /**
+     * Packs NAME_PREFIX_CHARS chars from offset on, padded with zeros, so that comparing two prefixes as signed longs
+     * orders them like String.compareTo() orders those chars.
+     */
+    static long prefix(String s, int offset) {
+        int length = s.length();
+        long prefix = 0;
+
+        for (int i = offset; i < offset + NAME_PREFIX_CHARS; i++) {
+            prefix = (prefix << 16) | (i < length ? s.charAt(i) : 0);
+        }
+        return prefix ^ Long.MIN_VALUE;
+    }
+
+    private static <T> T[] sortByKeys(T[] items, long[] keys, boolean parallel) {
+        return reorder(items, sortByKeys(keys, parallel), parallel);
+    }
+
+    /**
+     * Sorts the keys and returns the original index of every sorted key.
+     */
+    private static int[] sortByKeys(long[] keys, boolean parallel) {
+        int[] order = new int[keys.length];
+        fill(order, parallel);
+        sort(keys, order, new long[keys.length], new int[order.length], 0, keys.length, parallel);
+
+        return order;
+    }
+
+    private static void sort(long[] keys, int[] order, long[] keyBuffer, int[] orderBuffer, int from, int to,
+                             boolean parallel) {
+        MergeSortTask task = new MergeSortTask(keys, order, keyBuffer, orderBuffer, from, to, parallel);
+
+        if (parallel) {
+            PipelineExecutor.invoke(task);
+        } else {
+            task.compute();
+        }
+    }
+
+    private static void fill(long[] keys, IntToLongFunction key, boolean parallel) {
+        if (parallel) {
+            Arrays.parallelSetAll(keys, key);
+        } else {
+            Arrays.setAll(keys, key);
+        }
+    }
+
+    private static void fill(int[] order, boolean parallel) {
+        if (parallel) {
+            Arrays.parallelSetAll(order, i -> i);
+        } else {
+            Arrays.setAll(order, i -> i);
+        }
+    }
+
+    private static <T> T[] reorder(T[] items, int[] order, boolean parallel) {
+        return reorder(items, i -> order[i], parallel);
+    }
+
+    private static <T> T[] reorder(T[] items, IntUnaryOperator index, boolean parallel) {
+        T[] sorted = Arrays.copyOf(items, items.length);
+
+        if (parallel) {
+            Arrays.parallelSetAll(sorted, i -> items[index.applyAsInt(i)]);
+        } else {
+            Arrays.setAll(sorted, i -> items[index.applyAsInt(i)]);
+        }
+        return sorted;
+    }
+
+    /**
+     * Orders the runs of equal prefixes left by the first sort, one group of NAME_PREFIX_CHARS chars at a time.
+     *
+     * Within a run every String shares the chars compared so far, so the run is sorted again by the next chars of
+     * its Strings, and so on, until a run holds Strings that have no more chars: those only differ in trailing
+     * '\u0000' chars that the zero padding hid, and are ordered shortest first, as compareTo() does.
+     */
+    private static final class StringRefinement {
+        private final String[] strings;
+        private final long[] keys;
+        private final int[] order;
+        private final long[] keyBuffer;
+        private final int[] orderBuffer;
+
+        StringRefinement(String[] strings, long[] keys, int[] order) {
+            this.strings = strings;
+            this.keys = keys;
+            this.order = order;
+            this.keyBuffer = new long[keys.length];
+            this.orderBuffer = new int[order.length];
+        }
+
+        /**
+         * @return start and end of every run of two or more equal keys in [from, to)
+         */
+        int[] runs(int from, int to) {
+            int[] runs = new int[16];
+            int count = 0;
+
+            for (int start = from; start < to; ) {
+                int end = start + 1;
+
+                while (end < to && keys[end] == keys[start]) {
+                    end++;
+                }
+                if (end - start > 1) {
+                    if (count + 2 > runs.length) {
+                        runs = Arrays.copyOf(runs, runs.length * 2);
+                    }
+                    runs[count++] = start;
+                    runs[count++] = end;
+                }
+                start = end;
+            }
+            return Arrays.copyOf(runs, count);
+        }
+
+        /**
+         * Sorts the run [from, to) whose Strings are equal in their first offset chars.
+         */
+        void refine(int from, int to, int offset) {
+            boolean longer = false;
+
+            for (int i = from; i < to && !longer; i++) {
+                longer = strings[order[i]].length() > offset;
+            }
+
+            if (!longer) {
+                for (int i = from; i < to; i++) {
+                    keys[i] = strings[order[i]].length();
+                }
+                sort(keys, order, keyBuffer, orderBuffer, from, to, false);
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                keys[i] = prefix(strings[order[i]], offset);
+            }
+            sort(keys, order, keyBuffer, orderBuffer, from, to, false);
+
+            int[] runs = runs(from, to);
+            for (int run = 0; run < runs.length; run += 2) {
+                refine(runs[run], runs[run + 1], offset + NAME_PREFIX_CHARS);
+            }
+        }
+    }
+
+    /**
+     * Stable merge sort of keys[from, to) together with order[from, to), using the buffers of the same size.
+     */
+    private static final class MergeSortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] keys;
+        private final int[] order;
+        private final long[] keyBuffer;
+        private final int[] orderBuffer;
+        private final int from;
+        private final int to;
+        private final boolean parallel;
+
+        MergeSortTask(long[] keys, int[] order, long[] keyBuffer, int[] orderBuffer, int from, int to,
+                      boolean parallel) {
+            this.keys = keys;
+            this.order = order;
+            this.keyBuffer = keyBuffer;
+            this.orderBuffer = orderBuffer;
+            this.from = from;
+            this.to = to;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= INSERTION_SORT_SIZE) {
+                insertionSort();
+                return;
+            }
+
+            int mid = from + ((to - from) >>> 1);
+            boolean fork = parallel && to - from > MERGE_LEAF_SIZE;
+            MergeSortTask left = new MergeSortTask(keys, order, keyBuffer, orderBuffer, from, mid, fork);
+            MergeSortTask right = new MergeSortTask(keys, order, keyBuffer, orderBuffer, mid, to, fork);
+
+            if (fork) {
+                ForkJoinTask.invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+
+            if (keys[mid - 1] > keys[mid]) {
+                merge(mid);
+            }
+        }
+
+        private void insertionSort() {
+            for (int i = from + 1; i < to; i++) {
+                long key = keys[i];
+                int index = order[i];
+                int j = i - 1;
+
+                while (j >= from && keys[j] > key) {
+                    keys[j + 1] = keys[j];
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                keys[j + 1] = key;
+                order[j + 1] = index;
+            }
+        }
+
+        /**
+         * Merges the sorted runs [from, mid) and [mid, to), taking from the left run on ties.
+         */
+        private void merge(int mid) {
+            int length = mid - from;
+            System.arraycopy(keys, from, keyBuffer, from, length);
+            System.arraycopy(order, from, orderBuffer, from, length);
+
+            int left = from;
+            int right = mid;
+            int out = from;
+
+            while (left < mid && right < to) {
+                if (keyBuffer[left] <= keys[right]) {
+                    keys[out] = keyBuffer[left];
+                    order[out++] = orderBuffer[left++];
+                } else {
+                    keys[out] = keys[right];
+                    order[out++] = order[right++];
+                }
+            }
+            System.arraycopy(keyBuffer, left, keys, out, mid - left);
+            System.arraycopy(orderBuffer, left, order, out, mid - left);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package cl.andres.streams.j8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * In-memory employee repository that behaves like a remote store, for testing lookup throughput offline.
+ *
+ * Every request waits for a round trip before it is answered, and a batch request additionally waits a per-id time,
+ * so a findById() per id pays the round trip every time while findAllById() pays it once per batch. The waits park
+ * the calling thread, as blocking on a socket would; an interrupt ends a wait early and stays set on the thread.
+ */
+public class LatencySimulatingRepository implements EmployeeLookup {
+
+    private final EmployeeLookup delegate;
+    private final long roundTripNanos;
+    private final long perIdNanos;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder ids = new LongAdder();
+
+    public LatencySimulatingRepository(EmployeeLookup delegate, long roundTrip, long perId,
+                                       TimeUnit unit) {
+        if (roundTrip < 0 || perId < 0) {
+            throw new IllegalArgumentException("latencies must not be negative");
+        }
+        this.delegate = delegate;
+        this.roundTripNanos = unit.toNanos(roundTrip);
+        this.perIdNanos = unit.toNanos(perId);
+    }
+
+    /**
+     * @return the employee with the given id, or null if there is none, after one round trip
+     */
+    @Override
+    public Employee findById(int id) {
+        requests.increment();
+        ids.increment();
+        await(roundTripNanos + perIdNanos);
+
+        return delegate.findById(id);
+    }
+
+    public Employee findById(Integer id) {
+        return id == null ? null : findById(id.intValue());
+    }
+
+    /**
+     * @return the employee of every id, in the order of the ids, with null for unknown ids, after one round trip
+     */
+    public List<Employee> findAllById(List<Integer> batch) {
+        requests.increment();
+        ids.add(batch.size());
+        await(roundTripNanos + perIdNanos * batch.size());
+
+        List<Employee> employees = new ArrayList<>(batch.size());
+        for (Integer id : batch) {
+            employees.add(id == null ? null : delegate.findById(id));
+        }
+        return employees;
+    }
+
+    /**
+     * @return number of requests answered so far, single or batched
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getIdsRequested() {
+        return ids.sum();
+    }
+
+    private static void await(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+
+        for (long remaining = nanos; remaining > 0 && !Thread.currentThread().isInterrupted();
+             remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
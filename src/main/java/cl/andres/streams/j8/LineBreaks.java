@@ -0,0 +1,79 @@
+package cl.andres.streams.j8;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Line splitting over buffers, with the same rules as BufferedReader.readLine(): a line ends at '\n', '\r' or "\r\n",
+ * and a terminator at the very end of the input does not start another, empty, line.
+ *
+ * All indexes are absolute buffer indexes; the buffers' position and limit are never touched, so a buffer can be
+ * shared by several threads scanning disjoint ranges.
+ */
+final class LineBreaks {
+
+    private LineBreaks() {
+    }
+
+    /**
+     * @return index of the first terminator in [from, to), or to if the line runs to the end of the range
+     */
+    static int lineEnd(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static int lineEnd(CharBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = buffer.get(i);
+
+            if (c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @param end a value returned by lineEnd()
+     * @return index where the line after the one ending at end starts
+     */
+    static int nextLineStart(ByteBuffer buffer, int end, int to) {
+        if (end >= to) {
+            return to;
+        }
+        return buffer.get(end) == '\r' && end + 1 < to && buffer.get(end + 1) == '\n' ? end + 2 : end + 1;
+    }
+
+    static int nextLineStart(CharBuffer buffer, int end, int to) {
+        if (end >= to) {
+            return to;
+        }
+        return buffer.get(end) == '\r' && end + 1 < to && buffer.get(end + 1) == '\n' ? end + 2 : end + 1;
+    }
+
+    /**
+     * Finds a line boundary close to the middle of [from, to), for splitting the range between two tasks.
+     *
+     * @return the start of the first line beginning at or after the middle, or -1 if there is none before to
+     */
+    static int splitPoint(ByteBuffer buffer, int from, int to) {
+        int mid = from + ((to - from) >>> 1);
+        int boundary = nextLineStart(buffer, lineEnd(buffer, mid, to), to);
+
+        return boundary < to ? boundary : -1;
+    }
+
+    static int splitPoint(CharBuffer buffer, int from, int to) {
+        int mid = from + ((to - from) >>> 1);
+        int boundary = nextLineStart(buffer, lineEnd(buffer, mid, to), to);
+
+        return boundary < to ? boundary : -1;
+    }
+}
@@ -0,0 +1,248 @@
+package cl.andres.streams.j8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parallel-friendly replacement for Files.lines() over UTF-8 files.
+ *
+ * The file is memory-mapped through a FileChannel, in regions of at most Integer.MAX_VALUE bytes that each end on a
+ * line boundary. A region's spliterator splits at the line boundary closest to the middle of its remaining bytes, so
+ * parallel streams get balanced chunks instead of the small batches a BufferedReader-based spliterator hands out.
+ *
+ * Lines are CharSequence views over the mapping and are only decoded when needed: a line made of ASCII bytes is read
+ * in place, any other line is decoded once on first access. Call toString() to keep a line beyond the stream.
+ * Lines are split with the same rules as BufferedReader.readLine().
+ */
+public final class MappedLineSource {
+
+    /**
+     * Ranges below this many bytes are not split any further.
+     */
+    static final int MIN_SPLIT_BYTES = 1 << 13;
+
+    private MappedLineSource() {
+    }
+
+    public static Stream<CharSequence> lines(Path path) throws IOException {
+        return lines(path, Integer.MAX_VALUE);
+    }
+
+    static Stream<CharSequence> lines(Path path, int maxRegionBytes) throws IOException {
+        List<ByteBuffer> regions = new ArrayList<>();
+
+        // The mappings stay valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+
+            while (start < size) {
+                int length = (int) Math.min(maxRegionBytes, size - start);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                int end = start + length < size ? lastLineBoundary(channel, mapped, length, start) : length;
+
+                regions.add(mapped);
+                mapped.limit(end);
+                start += end;
+            }
+        }
+
+        if (regions.isEmpty()) {
+            return Stream.empty();
+        }
+        return concat(regions, 0, regions.size());
+    }
+
+    private static Stream<CharSequence> concat(List<ByteBuffer> regions, int from, int to) {
+        if (to - from == 1) {
+            ByteBuffer region = regions.get(from);
+            return StreamSupport.stream(new LineSpliterator(region, 0, region.limit()), false);
+        }
+
+        int mid = (from + to) >>> 1;
+        return Stream.concat(concat(regions, from, mid), concat(regions, mid, to));
+    }
+
+    /**
+     * @return the length of the region once cut after its last complete line
+     */
+    private static int lastLineBoundary(FileChannel channel, ByteBuffer region, int length, long regionStart)
+            throws IOException {
+        int last = length - 1;
+
+        // Only a '\r' as the last byte can be half of a "\r\n" pair that the region end splits; it then has to stay
+        // with its '\n' in the next region.
+        if (region.get(last) == '\r' && isNewline(channel, regionStart + length)) {
+            last--;
+        }
+
+        for (int i = last; i >= 0; i--) {
+            byte b = region.get(i);
+
+            if (b == '\n' || b == '\r') {
+                return LineBreaks.nextLineStart(region, i, length);
+            }
+        }
+        throw new IOException("Line starting at byte " + regionStart + " is longer than " + length + " bytes");
+    }
+
+    private static boolean isNewline(FileChannel channel, long position) throws IOException {
+        ByteBuffer next = ByteBuffer.allocate(1);
+
+        return channel.read(next, position) == 1 && next.get(0) == '\n';
+    }
+
+    private static final class LineSpliterator implements Spliterator<CharSequence> {
+        private final ByteBuffer buffer;
+        private int from;
+        private final int to;
+
+        LineSpliterator(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CharSequence> action) {
+            if (from >= to) {
+                return false;
+            }
+
+            int end = LineBreaks.lineEnd(buffer, from, to);
+            action.accept(new Utf8Line(buffer, from, end));
+            from = LineBreaks.nextLineStart(buffer, end, to);
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super CharSequence> action) {
+            int start = from;
+
+            while (start < to) {
+                int end = LineBreaks.lineEnd(buffer, start, to);
+                action.accept(new Utf8Line(buffer, start, end));
+                start = LineBreaks.nextLineStart(buffer, end, to);
+            }
+            from = to;
+        }
+
+        @Override
+        public Spliterator<CharSequence> trySplit() {
+            if (to - from < MIN_SPLIT_BYTES) {
+                return null;
+            }
+
+            int split = LineBreaks.splitPoint(buffer, from, to);
+            if (split < 0) {
+                return null;
+            }
+
+            LineSpliterator prefix = new LineSpliterator(buffer, from, split);
+            from = split;
+            return prefix;
+        }
+
+        /**
+         * Remaining bytes: an upper bound of the remaining lines, proportional to the work left.
+         */
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * A line of a mapped region, decoded lazily.
+     */
+    static final class Utf8Line implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private byte ascii;
+        private String decoded;
+
+        Utf8Line(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return isAscii() ? end - start : decode().length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (!isAscii()) {
+                return decode().charAt(index);
+            }
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("index " + index + " outside line of length " + (end - start));
+            }
+            return (char) buffer.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (!isAscii()) {
+                return decode().subSequence(from, to);
+            }
+            if (from < 0 || to > end - start || from > to) {
+                throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of line of length "
+                        + (end - start));
+            }
+            Utf8Line line = new Utf8Line(buffer, start + from, start + to);
+            line.ascii = 1;
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return decode();
+        }
+
+        private boolean isAscii() {
+            if (ascii == 0) {
+                ascii = -1;
+
+                for (int i = start; i < end; i++) {
+                    if (buffer.get(i) < 0) {
+                        return false;
+                    }
+                }
+                ascii = 1;
+            }
+            return ascii > 0;
+        }
+
+        private String decode() {
+            if (decoded == null) {
+                byte[] bytes = new byte[end - start];
+
+                for (int i = start; i < end; i++) {
+                    bytes[i - start] = buffer.get(i);
+                }
+                decoded = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return decoded;
+        }
+    }
+}
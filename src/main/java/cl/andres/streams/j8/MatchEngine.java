@@ -0,0 +1,294 @@
+package cl.andres.streams.j8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
+
+/**
+ * Evaluates several allMatch/anyMatch/noneMatch checks over an int[] in a single pass.
+ *
+ * Three calls like stream().allMatch(...), stream().anyMatch(...) and stream().noneMatch(...) scan the data three
+ * times. The engine walks the array once, in blocks of BLOCK_SIZE elements, and runs every check that is still open
+ * over a block while it is in cache. A check is closed by its first decisive element (one that fails an allMatch, or
+ * matches an anyMatch or a noneMatch) and is not evaluated again; the pass ends as soon as every check is closed.
+ *
+ * In parallel mode the array is split into ranges scanned by fork-join tasks that share the set of closed checks, so
+ * an element that closes a check in one task stops that check in its siblings at their next block, and a task that
+ * finds every check closed returns without scanning the rest of its range.
+ *
+ * Predicates may be called from several threads in parallel mode and must be stateless. Up to MAX_CHECKS checks can
+ * be evaluated together.
+ */
+public class MatchEngine {
+
+    public static final int MAX_CHECKS = 64;
+    static final int BLOCK_SIZE = 1024;
+    static final int LEAVES_PER_WORKER = 4;
+
+    private final List<Check> checks;
+    private final long allClosed;
+
+    private MatchEngine(Builder builder) {
+        this.checks = new ArrayList<>(builder.checks);
+        this.allClosed = checks.size() == MAX_CHECKS ? -1L : (1L << checks.size()) - 1;
+    }
+
+    public Result evaluate(int[] values, boolean parallel) {
+        return evaluate(values, 0, values.length, parallel);
+    }
+
+    public Result evaluate(int[] values, int from, int to, boolean parallel) {
+        if (from < 0 || to > values.length || from > to) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of array of length "
+                    + values.length);
+        }
+
+        Pass pass = new Pass(values);
+        if (parallel) {
+            int leafSize = Math.max(BLOCK_SIZE, (to - from) / (ForkJoinPool.getCommonPoolParallelism()
+                    * LEAVES_PER_WORKER));
+            PipelineExecutor.invoke(new ScanTask(pass, from, to, leafSize));
+        } else {
+            pass.scan(from, to);
+        }
+        return pass.result();
+    }
+
+    public List<String> getCheckNames() {
+        List<String> names = new ArrayList<>(checks.size());
+
+        for (Check check : checks) {
+            names.add(check.name);
+        }
+        return names;
+    }
+
+    public static class Builder {
+        private final List<Check> checks = new ArrayList<>();
+
+        /**
+         * true if every element matches, or the range is empty
+         */
+        public Builder allMatch(String name, IntPredicate predicate) {
+            return add(name, Kind.ALL, predicate);
+        }
+
+        /**
+         * true if some element matches
+         */
+        public Builder anyMatch(String name, IntPredicate predicate) {
+            return add(name, Kind.ANY, predicate);
+        }
+
+        /**
+         * true if no element matches, or the range is empty
+         */
+        public Builder noneMatch(String name, IntPredicate predicate) {
+            return add(name, Kind.NONE, predicate);
+        }
+
+        public MatchEngine build() {
+            return new MatchEngine(this);
+        }
+
+        private Builder add(String name, Kind kind, IntPredicate predicate) {
+            if (checks.size() == MAX_CHECKS) {
+                throw new IllegalStateException("at most " + MAX_CHECKS + " checks can be evaluated together");
+            }
+            for (Check check : checks) {
+                if (check.name.equals(name)) {
+                    throw new IllegalArgumentException("duplicate check " + name);
+                }
+            }
+            checks.add(new Check(name, kind, predicate));
+            return this;
+        }
+    }
+
+    private enum Kind {
+        ALL(false), ANY(true), NONE(true);
+
+        /**
+         * The predicate value that closes the check.
+         */
+        final boolean decisive;
+
+        Kind(boolean decisive) {
+            this.decisive = decisive;
+        }
+
+        /**
+         * @return the answer of a check that was closed by a decisive element, or the one of an open check if not
+         */
+        boolean answer(boolean closed) {
+            return this == ANY ? closed : !closed;
+        }
+    }
+
+    private static final class Check {
+        final String name;
+        final Kind kind;
+        final IntPredicate predicate;
+
+        Check(String name, Kind kind, IntPredicate predicate) {
+            this.name = name;
+            this.kind = kind;
+            this.predicate = predicate;
+        }
+    }
+
+    /**
+     * State of one evaluation: which checks are closed, shared by every task of the pass.
+     */
+    private final class Pass {
+        final int[] values;
+        final AtomicLong closed = new AtomicLong();
+        final LongAdder scanned = new LongAdder();
+
+        Pass(int[] values) {
+            this.values = values;
+        }
+
+        boolean done() {
+            return closed.get() == allClosed;
+        }
+
+        void scan(int from, int to) {
+            long evaluated = 0;
+
+            for (int block = from; block < to; block += BLOCK_SIZE) {
+                long open = ~closed.get() & allClosed;
+                if (open == 0) {
+                    break;
+                }
+
+                int end = Math.min(to, block + BLOCK_SIZE);
+                for (; open != 0; open &= open - 1) {
+                    int index = Long.numberOfTrailingZeros(open);
+                    Check check = checks.get(index);
+                    int decisive = scan(check, block, end);
+
+                    evaluated += (decisive < 0 ? end : decisive + 1) - block;
+                    if (decisive >= 0) {
+                        close(index);
+                    }
+                }
+            }
+            scanned.add(evaluated);
+        }
+
+        /**
+         * @return the position of the first decisive element of the block, or -1 if there is none
+         */
+        private int scan(Check check, int from, int to) {
+            IntPredicate predicate = check.predicate;
+            boolean decisive = check.kind.decisive;
+
+            for (int i = from; i < to; i++) {
+                if (predicate.test(values[i]) == decisive) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void close(int index) {
+            long bit = 1L << index;
+            long current;
+
+            do {
+                current = closed.get();
+            } while ((current & bit) == 0 && !closed.compareAndSet(current, current | bit));
+        }
+
+        Result result() {
+            long closedChecks = closed.get();
+            Map<String, Boolean> answers = new LinkedHashMap<>();
+
+            for (int i = 0; i < checks.size(); i++) {
+                Check check = checks.get(i);
+                answers.put(check.name, check.kind.answer((closedChecks & (1L << i)) != 0));
+            }
+            return new Result(answers, scanned.sum());
+        }
+    }
+
+    private static final class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Pass pass;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        ScanTask(Pass pass, int from, int to, int leafSize) {
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (pass.done()) {
+                return;
+            }
+            if (to - from <= leafSize) {
+                pass.scan(from, to);
+                return;
+            }
+
+            int mid = from + ((to - from) >>> 1);
+            ForkJoinTask.invokeAll(new ScanTask(pass, from, mid, leafSize), new ScanTask(pass, mid, to, leafSize));
+        }
+    }
+
+    public static final class Result {
+        private final Map<String, Boolean> answers;
+        private final long evaluations;
+
+        Result(Map<String, Boolean> answers, long evaluations) {
+            this.answers = Collections.unmodifiableMap(answers);
+            this.evaluations = evaluations;
+        }
+
+        public boolean get(String check) {
+            Boolean answer = answers.get(check);
+
+            if (answer == null) {
+                throw new IllegalArgumentException("unknown check " + check);
+            }
+            return answer;
+        }
+
+        /**
+         * @return the answer of every check, in the order the checks were added
+         */
+        public Map<String, Boolean> asMap() {
+            return answers;
+        }
+
+        /**
+         * @return predicate calls made over all the checks, which stops growing for a check once it is closed
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "answers=" + answers +
+                    ", evaluations=" + evaluations +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package cl.andres.streams.j8;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Allocation-free palindrome checks.
+ *
+ * isPalindrome() gives the same answer as s.compareToIgnoreCase(new StringBuilder(s).reverse().toString()) == 0, but
+ * walks the sequence with two pointers instead of building the reversed copy. Characters are compared the way
+ * compareToIgnoreCase() compares them: equal as is, after Character.toUpperCase(), or after toUpperCase() followed by
+ * toLowerCase(). Surrogate pairs stay in order when a String is reversed, so sequences containing surrogates fall
+ * back to walking the reversed sequence one code unit at a time.
+ *
+ * The scan() methods read lines straight out of a CharBuffer or a UTF-8 ByteBuffer (e.g. a mapped file) and only
+ * create a String for the lines that are palindromes. In parallel mode the buffer is split at line boundaries into
+ * chunks of at least SPLIT_THRESHOLD units that are scanned by fork-join tasks; results keep the order of the lines.
+ */
+public final class PalindromeScanner {
+
+    static final int SPLIT_THRESHOLD = 1 << 16;
+
+    private PalindromeScanner() {
+    }
+
+    public static boolean isPalindrome(CharSequence s) {
+        return isPalindrome(s, 0, s.length());
+    }
+
+    /**
+     * Checks the range [from, to) of the sequence.
+     */
+    public static boolean isPalindrome(CharSequence s, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            char left = s.charAt(i);
+            char right = s.charAt(j);
+
+            if (Character.isSurrogate(left) || Character.isSurrogate(right)) {
+                return matchesReversed(s, from, to);
+            }
+            if (!equalsIgnoreCase(left, right)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lines of the buffer's remaining content that are length chars long and palindromes, in buffer order.
+     */
+    public static List<String> scan(CharBuffer buffer, int length, boolean parallel) {
+        CharChunkTask task = new CharChunkTask(buffer, buffer.position(), buffer.limit(), length);
+
+        return parallel ? PipelineExecutor.invoke(task) : task.scanLines();
+    }
+
+    /**
+     * Same as scan(CharBuffer, int, boolean) for UTF-8 encoded bytes. Lines made only of ASCII bytes are checked in
+     * place; only lines with other characters and the right length are decoded first.
+     */
+    public static List<String> scan(ByteBuffer utf8, int length, boolean parallel) {
+        ByteChunkTask task = new ByteChunkTask(utf8, utf8.position(), utf8.limit(), length);
+
+        return parallel ? PipelineExecutor.invoke(task) : task.scanLines();
+    }
+
+    static boolean equalsIgnoreCase(char c1, char c2) {
+        if (c1 == c2) {
+            return true;
+        }
+        char u1 = Character.toUpperCase(c1);
+        char u2 = Character.toUpperCase(c2);
+
+        return u1 == u2 || Character.toLowerCase(u1) == Character.toLowerCase(u2);
+    }
+
+    /**
+     * Compares the range with its reverse as built by StringBuilder.reverse(), which keeps surrogate pairs in order.
+     */
+    private static boolean matchesReversed(CharSequence s, int from, int to) {
+        int i = from;
+        int j = to - 1;
+
+        while (j >= from) {
+            char low = s.charAt(j);
+
+            if (Character.isLowSurrogate(low) && j > from && Character.isHighSurrogate(s.charAt(j - 1))) {
+                if (!equalsIgnoreCase(s.charAt(i), s.charAt(j - 1)) || !equalsIgnoreCase(s.charAt(i + 1), low)) {
+                    return false;
+                }
+                i += 2;
+                j -= 2;
+            } else {
+                if (!equalsIgnoreCase(s.charAt(i), low)) {
+                    return false;
+                }
+                i++;
+                j--;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiPalindrome(ByteBuffer buffer, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            if (!equalsIgnoreCase((char) buffer.get(i), (char) buffer.get(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of UTF-16 chars the UTF-8 bytes decode to, for well-formed input.
+     */
+    private static int utf16Length(ByteBuffer buffer, int from, int to) {
+        int chars = 0;
+
+        for (int i = from; i < to; i++) {
+            int b = buffer.get(i) & 0xFF;
+
+            if ((b & 0xC0) != 0x80) {
+                chars += b >= 0xF0 ? 2 : 1;
+            }
+        }
+        return chars;
+    }
+
+    private static final class CharChunkTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final CharBuffer buffer;
+        private final int from;
+        private final int to;
+        private final int length;
+
+        CharChunkTask(CharBuffer buffer, int from, int to, int length) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.length = length;
+        }
+
+        @Override
+        protected List<String> compute() {
+            int split = to - from > SPLIT_THRESHOLD ? LineBreaks.splitPoint(buffer, from, to) : -1;
+
+            if (split < 0) {
+                return scanLines();
+            }
+
+            CharChunkTask right = new CharChunkTask(buffer, split, to, length);
+            right.fork();
+            List<String> result = new CharChunkTask(buffer, from, split, length).compute();
+            result.addAll(right.join());
+            return result;
+        }
+
+        private List<String> scanLines() {
+            List<String> palindromes = new ArrayList<>();
+            CharSequence chars = buffer;
+            int offset = buffer.position();
+            int start = from;
+
+            while (start < to) {
+                int end = LineBreaks.lineEnd(buffer, start, to);
+
+                // CharBuffer's CharSequence indexes are relative to its position.
+                if (end - start == length && isPalindrome(chars, start - offset, end - offset)) {
+                    palindromes.add(chars.subSequence(start - offset, end - offset).toString());
+                }
+                start = LineBreaks.nextLineStart(buffer, end, to);
+            }
+            return palindromes;
+        }
+    }
+
+    private static final class ByteChunkTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer buffer;
+        private final int from;
+        private final int to;
+        private final int length;
+
+        ByteChunkTask(ByteBuffer buffer, int from, int to, int length) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.length = length;
+        }
+
+        @Override
+        protected List<String> compute() {
+            int split = to - from > SPLIT_THRESHOLD ? LineBreaks.splitPoint(buffer, from, to) : -1;
+
+            if (split < 0) {
+                return scanLines();
+            }
+
+            ByteChunkTask right = new ByteChunkTask(buffer, split, to, length);
+            right.fork();
+            List<String> result = new ByteChunkTask(buffer, from, split, length).compute();
+            result.addAll(right.join());
+            return result;
+        }
+
+        private List<String> scanLines() {
+            List<String> palindromes = new ArrayList<>();
+            int start = from;
+
+            while (start < to) {
+                int end = LineBreaks.lineEnd(buffer, start, to);
+
+                if (isAscii(start, end)) {
+                    if (end - start == length && isAsciiPalindrome(buffer, start, end)) {
+                        palindromes.add(decode(start, end));
+                    }
+                } else if (utf16Length(buffer, start, end) == length) {
+                    String line = decode(start, end);
+
+                    if (line.length() == length && isPalindrome(line)) {
+                        palindromes.add(line);
+                    }
+                }
+                start = LineBreaks.nextLineStart(buffer, end, to);
+            }
+            return palindromes;
+        }
+
+        private boolean isAscii(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String decode(int start, int end) {
+            byte[] bytes = new byte[end - start];
+
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = buffer.get(i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Bulk salary raises over an IndexedEmployeeRepository.
+ *
+ * Calling salaryIncrement() from parallel().forEach() races when the same employee reaches two threads.
+ * PayrollUpdater first resolves the target employees so that each one appears exactly once, then splits them into
+ * disjoint batches of BATCH_SIZE that fork-join workers raise without contending on any lock: no two workers ever
+ * touch the same employee. Each change is handed to a SalaryChangeSink, which does no I/O on the worker threads. The
+ * salary field is volatile and the job only returns after every batch has been joined, so the new salaries are
+ * visible to every thread once raiseWhere()/raiseByIds() return.
+ *
+ * Jobs started through the same updater run one after the other. A raise applied by other means at the same time
+ * (e.g. salaryIncrement() on one of the employees) is not lost: each raise swaps the salary atomically and publishes
+ * the old and new salary it swapped.
+ */
+public class PayrollUpdater {
+
+    static final int BATCH_SIZE = 1024;
+
+    private final IndexedEmployeeRepository repository;
+    private final SalaryChangeSink changeSink;
+    private final Object jobLock = new Object();
+
+    /**
+     * Publishes every change to Employee.getSalaryChangeSink().
+     */
+    public PayrollUpdater(IndexedEmployeeRepository repository) {
+        this(repository, Employee.getSalaryChangeSink());
+    }
+
+    public PayrollUpdater(IndexedEmployeeRepository repository, SalaryChangeSink changeSink) {
+        this.repository = repository;
+        this.changeSink = changeSink;
+    }
+
+    /**
+     * Raises every employee of the repository that matches the predicate.
+     *
+     * @return number of employees whose salary changed
+     */
+    public int raiseWhere(Predicate<? super Employee> predicate, double percentage) {
+        synchronized (jobLock) {
+            Employee[] targets = repository.toArray();
+            return PipelineExecutor.invoke(
+                    new RaiseTask(targets, 0, targets.length, predicate, percentage, changeSink));
+        }
+    }
+
+    /**
+     * Raises the employees with the given ids; an id listed several times is raised once, unknown ids are ignored.
+     *
+     * @return number of employees whose salary changed
+     */
+    public int raiseByIds(int[] ids, double percentage) {
+        int[] distinct = ids.clone();
+        Arrays.parallelSort(distinct);
+
+        int count = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) {
+                distinct[count++] = distinct[i];
+            }
+        }
+
+        synchronized (jobLock) {
+            Employee[] targets = repository.findAllById(Arrays.copyOf(distinct, count));
+            return PipelineExecutor.invoke(
+                    new RaiseTask(targets, 0, targets.length, employee -> true, percentage, changeSink));
+        }
+    }
+
+    public int raiseByIds(IntStream ids, double percentage) {
+        return raiseByIds(ids.toArray(), percentage);
+    }
+
+    private static final class RaiseTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Employee[] employees;
+        private final int from;
+        private final int to;
+        private final Predicate<? super Employee> predicate;
+        private final double percentage;
+        private final SalaryChangeSink changeSink;
+
+        RaiseTask(Employee[] employees, int from, int to, Predicate<? super Employee> predicate, double percentage,
+                  SalaryChangeSink changeSink) {
+            this.employees = employees;
+            this.from = from;
+            this.to = to;
+            this.predicate = predicate;
+            this.percentage = percentage;
+            this.changeSink = changeSink;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= BATCH_SIZE) {
+                int changed = 0;
+
+                for (int i = from; i < to; i++) {
+                    Employee employee = employees[i];
+
+                    if (predicate.test(employee) && employee.applyRaise(percentage, changeSink)) {
+                        changed++;
+                    }
+                }
+                return changed;
+            }
+
+            int mid = from + ((to - from) >>> 1);
+            RaiseTask right = new RaiseTask(employees, mid, to, predicate, percentage, changeSink);
+            right.fork();
+            int left = new RaiseTask(employees, from, mid, predicate, percentage, changeSink).compute();
+
+            return left + right.join();
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs parallel pipelines in a named, sized ForkJoinPool instead of the JVM-wide common pool.
+ *
+ * A parallel stream runs in whatever pool the terminal operation is called from, so run() calls the pipeline from a
+ * worker of this executor's pool: every task the stream forks, and every RecursiveTask the pipeline invokes, stays
+ * in that pool and never competes with the common pool.
+ *
+ * The stream library decides how far to split a source from the common pool's parallelism, which says nothing about
+ * the pool a job runs in. Streams created through the Job handed to the pipeline are therefore split by the executor
+ * instead: a job gets a budget of leaves (four per worker, or exactly maxParallelism when the job is limited, so
+ * that no more than maxParallelism workers ever process it at once), and a range is never split into parts smaller
+ * than minSplitSize elements. Those sources report neither SIZED nor an exact size while they may still be split.
+ *
+ * Executors of the same affinity group share one pool, sized by the first executor of the group, so related jobs
+ * keep to the same set of threads while other groups and the common pool keep theirs. The JVM offers no way to pin
+ * threads to CPUs; a group bounds how many threads its jobs use, not which cores run them.
+ */
+public final class PipelineExecutor implements AutoCloseable {
+
+    public static final long DEFAULT_MIN_SPLIT_SIZE = 1024;
+
+    static final int LEAVES_PER_WORKER = 4;
+
+    private static final ConcurrentMap<String, ForkJoinPool> AFFINITY_GROUPS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final long minSplitSize;
+
+    private PipelineExecutor(Builder builder) {
+        this.name = builder.name;
+        this.minSplitSize = builder.minSplitSize;
+
+        if (builder.affinityGroup == null) {
+            this.pool = newPool(name, builder.parallelism);
+            this.ownsPool = true;
+        } else {
+            this.pool = AFFINITY_GROUPS.computeIfAbsent(builder.affinityGroup,
+                    group -> newPool(group, builder.parallelism));
+            this.ownsPool = false;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public long getMinSplitSize() {
+        return minSplitSize;
+    }
+
+    /**
+     * Runs the pipeline in this executor's pool and waits for it.
+     *
+     * Exceptions thrown by the pipeline are rethrown to the caller.
+     */
+    public <R> JobResult<R> run(String jobName, Function<? super Job, ? extends R> pipeline) {
+        return run(jobName, pool.getParallelism() * LEAVES_PER_WORKER, pipeline);
+    }
+
+    /**
+     * Runs the pipeline with no more than maxParallelism workers processing it at the same time.
+     */
+    public <R> JobResult<R> run(String jobName, int maxParallelism, Function<? super Job, ? extends R> pipeline) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be positive: " + maxParallelism);
+        }
+
+        Job job = new Job(jobName, maxParallelism);
+        long steals = pool.getStealCount();
+        long start = System.nanoTime();
+        R result;
+
+        if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+            result = pipeline.apply(job);
+        } else {
+            result = pool.submit(() -> pipeline.apply(job)).join();
+        }
+
+        return new JobResult<>(result, new JobStats(jobName, name, System.nanoTime() - start,
+                job.splits.sum(), job.leaves.sum(), job.workers.size(), pool.getStealCount() - steals));
+    }
+
+    /**
+     * Shuts the pool down once its running jobs are done; the shared pool of an affinity group is left running.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs a fork-join task in the pool of the calling worker, so that it stays in a PipelineExecutor's pool, or in
+     * the common pool when called from outside any pool; task.invoke() alone would run the root task, and every half
+     * it computes itself, in the calling thread.
+     */
+    static <T> T invoke(ForkJoinTask<T> task) {
+        return ForkJoinTask.inForkJoinPool() ? task.invoke() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    private static ForkJoinPool newPool(String name, int parallelism) {
+        AtomicInteger workers = new AtomicInteger();
+
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-worker-" + workers.getAndIncrement());
+            return thread;
+        }, null, false);
+    }
+
+    public static class Builder {
+        private final String name;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private long minSplitSize = DEFAULT_MIN_SPLIT_SIZE;
+        private String affinityGroup;
+
+        /**
+         * @param name prefix of the worker thread names, and the executor name reported in JobStats
+         */
+        public Builder(String name) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("name must not be empty");
+            }
+            this.name = name;
+        }
+
+        /**
+         * Number of worker threads; defaults to the number of available processors.
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism < 1 || parallelism > 0x7fff) {
+                throw new IllegalArgumentException("parallelism must be between 1 and 32767: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Smallest number of elements a source is split into.
+         */
+        public Builder minSplitSize(long minSplitSize) {
+            if (minSplitSize < 1) {
+                throw new IllegalArgumentException("minSplitSize must be positive: " + minSplitSize);
+            }
+            this.minSplitSize = minSplitSize;
+            return this;
+        }
+
+        /**
+         * Shares the pool of the named group; the parallelism of the first executor built for a group sizes it.
+         */
+        public Builder affinityGroup(String affinityGroup) {
+            this.affinityGroup = affinityGroup;
+            return this;
+        }
+
+        public PipelineExecutor build() {
+            return new PipelineExecutor(this);
+        }
+    }
+
+    /**
+     * A running job; creates the parallel sources of its pipeline and counts how they are split.
+     */
+    public final class Job {
+        private final String name;
+        private final int leafBudget;
+        private final long minSplitSize = PipelineExecutor.this.minSplitSize;
+        private final LongAdder splits = new LongAdder();
+        private final LongAdder leaves = new LongAdder();
+        private final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+        private Job(String name, int leafBudget) {
+            this.name = name;
+            this.leafBudget = leafBudget;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public <T> Stream<T> stream(Collection<T> source) {
+            return stream(source.spliterator());
+        }
+
+        public <T> Stream<T> stream(T[] source) {
+            return stream(Arrays.spliterator(source));
+        }
+
+        public <T> Stream<T> stream(Spliterator<T> source) {
+            return StreamSupport.stream(new JobSpliterator<>(source, this, leafBudget), true);
+        }
+
+        public IntStream intStream(int[] source) {
+            return intStream(Arrays.spliterator(source));
+        }
+
+        public IntStream intStream(Spliterator.OfInt source) {
+            return StreamSupport.intStream(new IntJobSpliterator(source, this, leafBudget), true);
+        }
+
+        private void leafStarted() {
+            leaves.increment();
+            workers.add(Thread.currentThread());
+        }
+    }
+
+    public static final class JobResult<R> {
+        private final R value;
+        private final JobStats stats;
+
+        JobResult(R value, JobStats stats) {
+            this.value = value;
+            this.stats = stats;
+        }
+
+        public R get() {
+            return value;
+        }
+
+        public JobStats getStats() {
+            return stats;
+        }
+    }
+
+    /**
+     * What a job did: splits and leaves count the Job sources only, steals is the difference in the pool's steal
+     * count across the job and includes the steals of any other job sharing the pool at the same time.
+     */
+    public static final class JobStats {
+        private final String jobName;
+        private final String executorName;
+        private final long elapsedNanos;
+        private final long splits;
+        private final long leaves;
+        private final int workers;
+        private final long steals;
+
+        JobStats(String jobName, String executorName, long elapsedNanos, long splits, long leaves, int workers,
+                 long steals) {
+            this.jobName = jobName;
+            this.executorName = executorName;
+            this.elapsedNanos = elapsedNanos;
+            this.splits = splits;
+            this.leaves = leaves;
+            this.workers = workers;
+            this.steals = steals;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public String getExecutorName() {
+            return executorName;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getSplits() {
+            return splits;
+        }
+
+        /**
+         * Number of source parts traversed, each one the work of a single task.
+         */
+        public long getLeaves() {
+            return leaves;
+        }
+
+        /**
+         * Number of distinct threads that traversed at least one part.
+         */
+        public int getWorkers() {
+            return workers;
+        }
+
+        public long getSteals() {
+            return steals;
+        }
+
+        @Override
+        public String toString() {
+            return "JobStats{" +
+                    "job=" + jobName +
+                    ", executor=" + executorName +
+                    ", elapsedMillis=" + elapsedNanos / 1_000_000.0 +
+                    ", splits=" + splits +
+                    ", leaves=" + leaves +
+                    ", workers=" + workers +
+                    ", steals=" + steals +
+                    '}';
+        }
+    }
+
+    /**
+     * Splits the source while the job's leaf budget lasts and both halves keep at least minSplitSize elements.
+     */
+    private static class JobSpliterator<T, S extends Spliterator<T>> implements Spliterator<T> {
+        final S source;
+        final Job job;
+        int budget;
+        private boolean started;
+
+        JobSpliterator(S source, Job job, int budget) {
+            this.source = source;
+            this.job = job;
+            this.budget = budget;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            start();
+            return source.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            start();
+            source.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            @SuppressWarnings("unchecked")
+            S prefix = canSplit() ? (S) source.trySplit() : null;
+
+            if (prefix == null) {
+                return null;
+            }
+            return wrap(prefix, splitBudget());
+        }
+
+        /**
+         * Unknown while the source may still be split, so that the stream keeps asking; the source's estimate after.
+         */
+        @Override
+        public long estimateSize() {
+            return canSplit() ? Long.MAX_VALUE : source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return source.characteristics() & ~(SIZED | SUBSIZED);
+        }
+
+        Spliterator<T> wrap(S prefix, int prefixBudget) {
+            return new JobSpliterator<>(prefix, job, prefixBudget);
+        }
+
+        boolean canSplit() {
+            if (started || budget < 2) {
+                return false;
+            }
+            long size = source.estimateSize();
+            return size == Long.MAX_VALUE || size / 2 >= job.minSplitSize;
+        }
+
+        int splitBudget() {
+            int prefixBudget = budget / 2;
+            budget -= prefixBudget;
+            job.splits.increment();
+
+            return prefixBudget;
+        }
+
+        void start() {
+            if (!started) {
+                started = true;
+                job.leafStarted();
+            }
+        }
+    }
+
+    private static final class IntJobSpliterator extends JobSpliterator<Integer, Spliterator.OfInt>
+            implements Spliterator.OfInt {
+
+        IntJobSpliterator(Spliterator.OfInt source, Job job, int budget) {
+            super(source, job, budget);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            start();
+            return source.tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            start();
+            source.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            return (Spliterator.OfInt) super.trySplit();
+        }
+
+        @Override
+        Spliterator<Integer> wrap(Spliterator.OfInt prefix, int prefixBudget) {
+            return new IntJobSpliterator(prefix, job, prefixBudget);
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package cl.andres.streams.j8;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-stage metrics for a stream pipeline.
+ *
+ * filter(), map() and peek() wrap the function of a stage in one that counts the elements going in and, for a
+ * filter, the ones that pass, which gives its selectivity. One call in sampleInterval, picked at random, is also
+ * timed and has the bytes the calling thread allocated during the call measured; totals are estimated from those
+ * samples, so that reading the clock and the allocation counter stays off the path of most elements. measure()
+ * records the wall time of whole runs of the pipeline.
+ *
+ * While the metrics are disabled, the wrapping methods return the function they were given, so an instrumented
+ * pipeline built then runs exactly like an uninstrumented one. Enabling or disabling only affects pipelines built
+ * afterwards.
+ *
+ * Counters are LongAdders, so stages called from many threads of a parallel stream do not contend. Metrics are read
+ * with snapshot(), through scheduleSnapshots(), or over JMX once register() has been called.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+
+    /**
+     * System property holding the default for new metrics; enabled unless set to false.
+     */
+    public static final String ENABLED_PROPERTY = "cl.andres.streams.j8.metrics";
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private final String pipeline;
+    private final int sampleInterval;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+
+    public PipelineMetrics(String pipeline) {
+        this(pipeline, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param sampleInterval average number of calls per timed call; 1 times every call
+     */
+    public PipelineMetrics(String pipeline, int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be positive: " + sampleInterval);
+        }
+        this.pipeline = pipeline;
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public String getPipeline() {
+        return pipeline;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public <T> Predicate<T> filter(String stage, Predicate<T> predicate) {
+        if (!enabled) {
+            return predicate;
+        }
+
+        Stage metrics = stage(stage, StageKind.FILTER);
+        return value -> {
+            long[] sample = metrics.begin();
+            boolean passed = predicate.test(value);
+
+            metrics.end(sample, passed);
+            return passed;
+        };
+    }
+
+    public <T, R> Function<T, R> map(String stage, Function<T, R> mapper) {
+        if (!enabled) {
+            return mapper;
+        }
+
+        Stage metrics = stage(stage, StageKind.MAP);
+        return value -> {
+            long[] sample = metrics.begin();
+            R result = mapper.apply(value);
+
+            metrics.end(sample, true);
+            return result;
+        };
+    }
+
+    public <T> Consumer<T> peek(String stage, Consumer<T> action) {
+        if (!enabled) {
+            return action;
+        }
+
+        Stage metrics = stage(stage, StageKind.PEEK);
+        return value -> {
+            long[] sample = metrics.begin();
+            action.accept(value);
+
+            metrics.end(sample, true);
+        };
+    }
+
+    /**
+     * Runs the terminal operation of the pipeline and records its wall time.
+     */
+    public <R> R measure(Supplier<R> run) {
+        if (!enabled) {
+            return run.get();
+        }
+
+        long start = System.nanoTime();
+        try {
+            return run.get();
+        } finally {
+            wallNanos.add(System.nanoTime() - start);
+            runs.increment();
+        }
+    }
+
+    public void measure(Runnable run) {
+        measure(() -> {
+            run.run();
+            return null;
+        });
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getWallNanos() {
+        return wallNanos.sum();
+    }
+
+    @Override
+    public List<StageSnapshot> getStages() {
+        List<Stage> current;
+
+        synchronized (stages) {
+            current = new ArrayList<>(stages.values());
+        }
+
+        List<StageSnapshot> snapshots = new ArrayList<>(current.size());
+        for (Stage stage : current) {
+            snapshots.add(stage.snapshot());
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(pipeline, System.currentTimeMillis(), getRuns(), getWallNanos(), getStages());
+    }
+
+    /**
+     * Zeroes every counter; counts of calls in progress may land on either side of the reset.
+     */
+    @Override
+    public void reset() {
+        runs.reset();
+        wallNanos.reset();
+        synchronized (stages) {
+            for (Stage stage : stages.values()) {
+                stage.reset();
+            }
+        }
+    }
+
+    /**
+     * Hands a snapshot to the listener every period, from a shared daemon thread, until the future is cancelled.
+     */
+    public ScheduledFuture<?> scheduleSnapshots(long period, TimeUnit unit, Consumer<? super Snapshot> listener) {
+        return scheduler().scheduleAtFixedRate(() -> listener.accept(snapshot()), period, period, unit);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, replacing metrics registered under the same pipeline
+     * name.
+     */
+    public ObjectName register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            ObjectName name = objectName();
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register metrics of pipeline " + pipeline, e);
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName());
+        } catch (InstanceNotFoundException e) {
+            // not registered
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot unregister metrics of pipeline " + pipeline, e);
+        }
+    }
+
+    private ObjectName objectName() throws JMException {
+        return new ObjectName("cl.andres.streams.j8:type=PipelineMetrics,name=" + ObjectName.quote(pipeline));
+    }
+
+    private Stage stage(String name, StageKind kind) {
+        synchronized (stages) {
+            Stage stage = stages.get(name);
+
+            if (stage == null) {
+                stage = new Stage(name, kind, sampleInterval);
+                stages.put(name, stage);
+            } else if (stage.kind != kind) {
+                throw new IllegalArgumentException("stage " + name + " of pipeline " + pipeline + " is a "
+                        + stage.kind + ", not a " + kind);
+            }
+            return stage;
+        }
+    }
+
+    private static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService current = scheduler;
+
+        if (current == null) {
+            synchronized (PipelineMetrics.class) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "pipeline-metrics");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                current = scheduler;
+            }
+        }
+        return current;
+    }
+
+    public enum StageKind {
+        FILTER, MAP, PEEK
+    }
+
+    private static final class Stage {
+        private static final AllocationCounter ALLOCATIONS = AllocationCounter.create();
+
+        final String name;
+        final StageKind kind;
+        final int sampleInterval;
+        final LongAdder in = new LongAdder();
+        final LongAdder out = new LongAdder();
+        final LongAdder sampledCalls = new LongAdder();
+        final LongAdder sampledNanos = new LongAdder();
+        final LongAdder sampledBytes = new LongAdder();
+
+        Stage(String name, StageKind kind, int sampleInterval) {
+            this.name = name;
+            this.kind = kind;
+            this.sampleInterval = sampleInterval;
+        }
+
+        /**
+         * @return allocation counter and clock before the call if it is sampled, null otherwise
+         */
+        long[] begin() {
+            if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+                return null;
+            }
+            return new long[] {ALLOCATIONS.currentThreadBytes(), System.nanoTime()};
+        }
+
+        void end(long[] sample, boolean passed) {
+            if (sample != null) {
+                long nanos = System.nanoTime() - sample[1];
+                long bytes = ALLOCATIONS.currentThreadBytes() - sample[0];
+
+                sampledCalls.increment();
+                sampledNanos.add(nanos);
+                sampledBytes.add(bytes);
+            }
+            in.increment();
+            if (passed) {
+                out.increment();
+            }
+        }
+
+        StageSnapshot snapshot() {
+            long calls = sampledCalls.sum();
+            long elements = in.sum();
+            double scale = calls == 0 ? 0.0 : (double) elements / calls;
+
+            return new StageSnapshot(name, kind.name(), elements, out.sum(), calls,
+                    Math.round(sampledNanos.sum() * scale),
+                    ALLOCATIONS.supported() ? Math.round(sampledBytes.sum() * scale) : -1);
+        }
+
+        void reset() {
+            in.reset();
+            out.reset();
+            sampledCalls.reset();
+            sampledNanos.reset();
+            sampledBytes.reset();
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread, where the JVM reports them (HotSpot does).
+     */
+    private static final class AllocationCounter {
+        private final com.sun.management.ThreadMXBean threads;
+
+        private AllocationCounter(com.sun.management.ThreadMXBean threads) {
+            this.threads = threads;
+        }
+
+        static AllocationCounter create() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotSpot = (com.sun.management.ThreadMXBean) threads;
+
+                if (hotSpot.isThreadAllocatedMemorySupported() && hotSpot.isThreadAllocatedMemoryEnabled()) {
+                    return new AllocationCounter(hotSpot);
+                }
+            }
+            return new AllocationCounter(null);
+        }
+
+        boolean supported() {
+            return threads != null;
+        }
+
+        long currentThreadBytes() {
+            return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    /**
+     * Metrics of one stage; time and allocated bytes are estimates extrapolated from the sampled calls.
+     */
+    public static final class StageSnapshot {
+        private final String name;
+        private final String kind;
+        private final long elementsIn;
+        private final long elementsOut;
+        private final long sampledCalls;
+        private final long estimatedNanos;
+        private final long estimatedAllocatedBytes;
+
+        StageSnapshot(String name, String kind, long elementsIn, long elementsOut, long sampledCalls,
+                      long estimatedNanos, long estimatedAllocatedBytes) {
+            this.name = name;
+            this.kind = kind;
+            this.elementsIn = elementsIn;
+            this.elementsOut = elementsOut;
+            this.sampledCalls = sampledCalls;
+            this.estimatedNanos = estimatedNanos;
+            this.estimatedAllocatedBytes = estimatedAllocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public long getElementsIn() {
+            return elementsIn;
+        }
+
+        public long getElementsOut() {
+            return elementsOut;
+        }
+
+        /**
+         * Fraction of the elements that passed the stage; 1 for stages other than filters.
+         */
+        public double getSelectivity() {
+            return elementsIn == 0 ? 1.0 : (double) elementsOut / elementsIn;
+        }
+
+        public long getSampledCalls() {
+            return sampledCalls;
+        }
+
+        public long getEstimatedNanos() {
+            return estimatedNanos;
+        }
+
+        /**
+         * @return -1 if the JVM does not report allocations per thread
+         */
+        public long getEstimatedAllocatedBytes() {
+            return estimatedAllocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "StageSnapshot{" +
+                    "name=" + name +
+                    ", kind=" + kind +
+                    ", in=" + elementsIn +
+                    ", out=" + elementsOut +
+                    ", selectivity=" + getSelectivity() +
+                    ", estimatedNanos=" + estimatedNanos +
+                    ", estimatedAllocatedBytes=" + estimatedAllocatedBytes +
+                    '}';
+        }
+    }
+
+    public static final class Snapshot {
+        private final String pipeline;
+        private final long timestamp;
+        private final long runs;
+        private final long wallNanos;
+        private final List<StageSnapshot> stages;
+
+        Snapshot(String pipeline, long timestamp, long runs, long wallNanos, List<StageSnapshot> stages) {
+            this.pipeline = pipeline;
+            this.timestamp = timestamp;
+            this.runs = runs;
+            this.wallNanos = wallNanos;
+            this.stages = stages;
+        }
+
+        public String getPipeline() {
+            return pipeline;
+        }
+
+        /**
+         * @return time the snapshot was taken, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public List<StageSnapshot> getStages() {
+            return stages;
+        }
+
+        /**
+         * @return the stage with the largest estimated time, or null if there are no stages
+         */
+        public StageSnapshot getSlowestStage() {
+            StageSnapshot slowest = null;
+
+            for (StageSnapshot stage : stages) {
+                if (slowest == null || stage.getEstimatedNanos() > slowest.getEstimatedNanos()) {
+                    slowest = stage;
+                }
+            }
+            return slowest;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "pipeline=" + pipeline +
+                    ", runs=" + runs +
+                    ", wallNanos=" + wallNanos +
+                    ", stages=" + stages +
+                    '}';
+        }
+    }
+}
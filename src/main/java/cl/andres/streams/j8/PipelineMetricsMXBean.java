@@ -0,0 +1,23 @@
+package cl.andres.streams.j8;
+
+import java.util.List;
+
+/**
+ * JMX view of a PipelineMetrics, registered as cl.andres.streams.j8:type=PipelineMetrics,name=[pipeline].
+ */
+public interface PipelineMetricsMXBean {
+
+    String getPipeline();
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getRuns();
+
+    long getWallNanos();
+
+    List<PipelineMetrics.StageSnapshot> getStages();
+
+    void reset();
+}
@@ -0,0 +1,340 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * partitioningBy() and bucketing for IntStream, LongStream and DoubleStream into primitive arrays.
+ *
+ * Collectors.partitioningBy() over a Stream<Integer> keeps every element as an Integer referenced from an ArrayList:
+ * 16 bytes for the object plus 4 or 8 for the reference, against 4 for an int. Here each bucket is a growable
+ * primitive array, filled without boxing through the three-argument collect() of the primitive streams, and trimmed
+ * to its size at the end. Partial results of a parallel stream are merged with one System.arraycopy() per bucket, or
+ * not copied at all when the receiving bucket is still empty.
+ *
+ * Elements keep their encounter order within a bucket, as with partitioningBy() and groupingBy().
+ */
+public final class PrimitiveCollectors {
+
+    static final int INITIAL_CAPACITY = 16;
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private PrimitiveCollectors() {
+    }
+
+    public static IntPartition partition(IntStream stream, IntPredicate predicate) {
+        return new IntPartition(buckets(stream, 2, value -> predicate.test(value) ? 1 : 0));
+    }
+
+    public static LongPartition partition(LongStream stream, LongPredicate predicate) {
+        return new LongPartition(buckets(stream, 2, value -> predicate.test(value) ? 1 : 0));
+    }
+
+    public static DoublePartition partition(DoubleStream stream, DoublePredicate predicate) {
+        return new DoublePartition(buckets(stream, 2, value -> predicate.test(value) ? 1 : 0));
+    }
+
+    /**
+     * Splits the stream into bucketCount arrays; a classifier result outside [0, bucketCount) fails the collection
+     * with an IllegalArgumentException.
+     */
+    public static IntBuckets buckets(IntStream stream, int bucketCount, IntUnaryOperator classifier) {
+        checkBucketCount(bucketCount);
+        IntBuckets buckets = stream.collect(() -> new IntBuckets(bucketCount),
+                (partial, value) -> partial.add(bucket(classifier.applyAsInt(value), bucketCount), value),
+                IntBuckets::merge);
+
+        buckets.trim();
+        return buckets;
+    }
+
+    public static LongBuckets buckets(LongStream stream, int bucketCount, LongToIntFunction classifier) {
+        checkBucketCount(bucketCount);
+        LongBuckets buckets = stream.collect(() -> new LongBuckets(bucketCount),
+                (partial, value) -> partial.add(bucket(classifier.applyAsInt(value), bucketCount), value),
+                LongBuckets::merge);
+
+        buckets.trim();
+        return buckets;
+    }
+
+    public static DoubleBuckets buckets(DoubleStream stream, int bucketCount, DoubleToIntFunction classifier) {
+        checkBucketCount(bucketCount);
+        DoubleBuckets buckets = stream.collect(() -> new DoubleBuckets(bucketCount),
+                (partial, value) -> partial.add(bucket(classifier.applyAsInt(value), bucketCount), value),
+                DoubleBuckets::merge);
+
+        buckets.trim();
+        return buckets;
+    }
+
+    private static void checkBucketCount(int bucketCount) {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("bucketCount must be positive: " + bucketCount);
+        }
+    }
+
+    private static int bucket(int bucket, int bucketCount) {
+        if (bucket < 0 || bucket >= bucketCount) {
+            throw new IllegalArgumentException("bucket " + bucket + " out of [0, " + bucketCount + ")");
+        }
+        return bucket;
+    }
+
+    /**
+     * Capacity for at least minCapacity elements, growing by half of the current capacity.
+     */
+    static int grow(int capacity, int minCapacity) {
+        if (minCapacity < 0 || minCapacity > MAX_ARRAY_SIZE) {
+            throw new OutOfMemoryError("bucket larger than " + MAX_ARRAY_SIZE + " elements");
+        }
+
+        long grown = Math.max(capacity + ((long) capacity >> 1), INITIAL_CAPACITY);
+        return (int) Math.min(Math.max(grown, minCapacity), MAX_ARRAY_SIZE);
+    }
+
+    /**
+     * Buckets of ints. The arrays returned by get() are the buckets themselves, not copies.
+     */
+    public static final class IntBuckets {
+        private final int[][] values;
+        private final int[] sizes;
+
+        IntBuckets(int bucketCount) {
+            this.values = new int[bucketCount][];
+            this.sizes = new int[bucketCount];
+            Arrays.fill(values, new int[0]);
+        }
+
+        void add(int bucket, int value) {
+            int size = sizes[bucket];
+
+            if (size == values[bucket].length) {
+                values[bucket] = Arrays.copyOf(values[bucket], grow(size, size + 1));
+            }
+            values[bucket][size] = value;
+            sizes[bucket] = size + 1;
+        }
+
+        /**
+         * Appends the buckets of a partial result that comes later in encounter order.
+         */
+        void merge(IntBuckets other) {
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                int size = sizes[bucket];
+                int otherSize = other.sizes[bucket];
+
+                if (size == 0) {
+                    values[bucket] = other.values[bucket];
+                } else if (otherSize > 0) {
+                    if (size + otherSize > values[bucket].length) {
+                        values[bucket] = Arrays.copyOf(values[bucket], grow(values[bucket].length, size + otherSize));
+                    }
+                    System.arraycopy(other.values[bucket], 0, values[bucket], size, otherSize);
+                }
+                sizes[bucket] = size + otherSize;
+            }
+        }
+
+        void trim() {
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                if (values[bucket].length != sizes[bucket]) {
+                    values[bucket] = Arrays.copyOf(values[bucket], sizes[bucket]);
+                }
+            }
+        }
+
+        public int getBucketCount() {
+            return values.length;
+        }
+
+        public int[] get(int bucket) {
+            return values[bucket];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.deepToString(values);
+        }
+    }
+
+    public static final class LongBuckets {
+        private final long[][] values;
+        private final int[] sizes;
+
+        LongBuckets(int bucketCount) {
+            this.values = new long[bucketCount][];
+            this.sizes = new int[bucketCount];
+            Arrays.fill(values, new long[0]);
+        }
+
+        void add(int bucket, long value) {
+            int size = sizes[bucket];
+
+            if (size == values[bucket].length) {
+                values[bucket] = Arrays.copyOf(values[bucket], grow(size, size + 1));
+            }
+            values[bucket][size] = value;
+            sizes[bucket] = size + 1;
+        }
+
+        void merge(LongBuckets other) {
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                int size = sizes[bucket];
+                int otherSize = other.sizes[bucket];
+
+                if (size == 0) {
+                    values[bucket] = other.values[bucket];
+                } else if (otherSize > 0) {
+                    if (size + otherSize > values[bucket].length) {
+                        values[bucket] = Arrays.copyOf(values[bucket], grow(values[bucket].length, size + otherSize));
+                    }
+                    System.arraycopy(other.values[bucket], 0, values[bucket], size, otherSize);
+                }
+                sizes[bucket] = size + otherSize;
+            }
+        }
+
+        void trim() {
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                if (values[bucket].length != sizes[bucket]) {
+                    values[bucket] = Arrays.copyOf(values[bucket], sizes[bucket]);
+                }
+            }
+        }
+
+        public int getBucketCount() {
+            return values.length;
+        }
+
+        public long[] get(int bucket) {
+            return values[bucket];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.deepToString(values);
+        }
+    }
+
+    public static final class DoubleBuckets {
+        private final double[][] values;
+        private final int[] sizes;
+
+        DoubleBuckets(int bucketCount) {
+            this.values = new double[bucketCount][];
+            this.sizes = new int[bucketCount];
+            Arrays.fill(values, new double[0]);
+        }
+
+        void add(int bucket, double value) {
+            int size = sizes[bucket];
+
+            if (size == values[bucket].length) {
+                values[bucket] = Arrays.copyOf(values[bucket], grow(size, size + 1));
+            }
+            values[bucket][size] = value;
+            sizes[bucket] = size + 1;
+        }
+
+        void merge(DoubleBuckets other) {
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                int size = sizes[bucket];
+                int otherSize = other.sizes[bucket];
+
+                if (size == 0) {
+                    values[bucket] = other.values[bucket];
+                } else if (otherSize > 0) {
+                    if (size + otherSize > values[bucket].length) {
+                        values[bucket] = Arrays.copyOf(values[bucket], grow(values[bucket].length, size + otherSize));
+                    }
+                    System.arraycopy(other.values[bucket], 0, values[bucket], size, otherSize);
+                }
+                sizes[bucket] = size + otherSize;
+            }
+        }
+
+        void trim() {
+            for (int bucket = 0; bucket < values.length; bucket++) {
+                if (values[bucket].length != sizes[bucket]) {
+                    values[bucket] = Arrays.copyOf(values[bucket], sizes[bucket]);
+                }
+            }
+        }
+
+        public int getBucketCount() {
+            return values.length;
+        }
+
+        public double[] get(int bucket) {
+            return values[bucket];
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.deepToString(values);
+        }
+    }
+
+    /**
+     * The elements that matched the predicate and those that did not, as arrays that are not copied by get().
+     */
+    public static final class IntPartition {
+        private final IntBuckets buckets;
+
+        IntPartition(IntBuckets buckets) {
+            this.buckets = buckets;
+        }
+
+        public int[] get(boolean matched) {
+            return buckets.get(matched ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "{false=" + Arrays.toString(get(false)) + ", true=" + Arrays.toString(get(true)) + "}";
+        }
+    }
+
+    public static final class LongPartition {
+        private final LongBuckets buckets;
+
+        LongPartition(LongBuckets buckets) {
+            this.buckets = buckets;
+        }
+
+        public long[] get(boolean matched) {
+            return buckets.get(matched ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "{false=" + Arrays.toString(get(false)) + ", true=" + Arrays.toString(get(true)) + "}";
+        }
+    }
+
+    public static final class DoublePartition {
+        private final DoubleBuckets buckets;
+
+        DoublePartition(DoubleBuckets buckets) {
+            this.buckets = buckets;
+        }
+
+        public double[] get(boolean matched) {
+            return buckets.get(matched ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "{false=" + Arrays.toString(get(false)) + ", true=" + Arrays.toString(get(true)) + "}";
+        }
+    }
+}
@@ -0,0 +1,641 @@
+package cl.andres.streams.j8;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * distinct() for IntStream and LongStream without boxing.
+ *
+ * IntStream.distinct() boxes every element into a HashSet<Integer>, roughly 50 bytes per distinct value. For arrays
+ * and parallel streams the values are first collected into a primitive array and their range is measured; a range
+ * of at most BITSET_BITS_PER_VALUE times the number of values is tracked in a bitset, anything sparser in an
+ * open-addressing hash table of longs. Survivors are marked in a bitmap over the input positions and copied out at
+ * the end.
+ *
+ * Like distinct(), an ordered input keeps the first occurrence of every value, in encounter order. A sequential
+ * stream is not collected first: its values are passed through a growing set as they are pulled, so the result stays
+ * lazy and short-circuits like distinct() does, also on an infinite stream. That set cannot measure the range up
+ * front, so it starts as a hash set and turns into a bitset once the values seen so far are dense enough, or from the
+ * first value when the source is SIZED and its size makes the range dense. A parallel stream is collected into an
+ * array when the terminal operation starts, like the barrier IntStream.distinct() puts into an ordered parallel
+ * pipeline, so it must be finite.
+ *
+ * In parallel mode the range is measured concurrently; a sparse ordered input is then cut into chunks that drop
+ * their own duplicates concurrently before the remaining values are checked against the hash table chunk by chunk,
+ * in order, while a dense one goes through the bitset in a single ordered pass. An unordered input needs no merge:
+ * every chunk adds its values to one concurrent set and keeps those it added first.
+ */
+public final class PrimitiveDistinct {
+
+    static final long BITSET_BITS_PER_VALUE = 64;
+    static final long MAX_BITSET_BITS = 1L << 36;
+    static final int MAX_HASH_CAPACITY = 1 << 30;
+    static final int MIN_CHUNK_SIZE = 1 << 13;
+
+    private PrimitiveDistinct() {
+    }
+
+    /**
+     * Lazy: the stream is only consumed once the returned stream's terminal operation runs, and a sequential stream
+     * only as far as that operation pulls it. Closing the returned stream closes this one.
+     */
+    public static IntStream distinct(IntStream stream) {
+        boolean parallel = stream.isParallel();
+        Spliterator.OfInt source = stream.spliterator();
+        boolean ordered = source.hasCharacteristics(Spliterator.ORDERED);
+        int characteristics = characteristics(ordered);
+
+        if (!parallel) {
+            return StreamSupport.intStream(new DistinctIntSpliterator(source, characteristics), false)
+                    .onClose(stream::close);
+        }
+
+        // the array spliterator adds SIZED and SUBSIZED, which the declared characteristics must include
+        int collected = characteristics | Spliterator.IMMUTABLE;
+        return StreamSupport.intStream(() -> {
+            int[] values = StreamSupport.intStream(source, true).toArray();
+            int[] distinct = distinct(values, true, ordered);
+
+            return Spliterators.spliterator(distinct, 0, distinct.length, collected);
+        }, collected | Spliterator.SIZED | Spliterator.SUBSIZED, true).onClose(stream::close);
+    }
+
+    public static LongStream distinct(LongStream stream) {
+        boolean parallel = stream.isParallel();
+        Spliterator.OfLong source = stream.spliterator();
+        boolean ordered = source.hasCharacteristics(Spliterator.ORDERED);
+        int characteristics = characteristics(ordered);
+
+        if (!parallel) {
+            return StreamSupport.longStream(new DistinctLongSpliterator(source, characteristics), false)
+                    .onClose(stream::close);
+        }
+
+        int collected = characteristics | Spliterator.IMMUTABLE;
+        return StreamSupport.longStream(() -> {
+            long[] values = StreamSupport.longStream(source, true).toArray();
+            long[] distinct = distinct(values, true, ordered);
+
+            return Spliterators.spliterator(distinct, 0, distinct.length, collected);
+        }, collected | Spliterator.SIZED | Spliterator.SUBSIZED, true).onClose(stream::close);
+    }
+
+    /**
+     * @return the first occurrence of every value, in order
+     */
+    public static int[] distinct(int[] values, boolean parallel) {
+        return distinct(values, parallel, true);
+    }
+
+    public static long[] distinct(long[] values, boolean parallel) {
+        return distinct(values, parallel, true);
+    }
+
+    static int[] distinct(int[] values, boolean parallel, boolean ordered) {
+        Chunks chunks = new Chunks(values.length, parallel);
+        long[] keep = firstOccurrences(i -> values[i], chunks, ordered);
+        int[] distinct = new int[chunks.count(keep)];
+
+        chunks.forEach(chunk -> {
+            int out = chunks.offsets[chunk];
+            for (int i = chunks.from(chunk); i < chunks.to(chunk); i++) {
+                if (isSet(keep, i)) {
+                    distinct[out++] = values[i];
+                }
+            }
+        });
+        return distinct;
+    }
+
+    static long[] distinct(long[] values, boolean parallel, boolean ordered) {
+        Chunks chunks = new Chunks(values.length, parallel);
+        long[] keep = firstOccurrences(i -> values[i], chunks, ordered);
+        long[] distinct = new long[chunks.count(keep)];
+
+        chunks.forEach(chunk -> {
+            int out = chunks.offsets[chunk];
+            for (int i = chunks.from(chunk); i < chunks.to(chunk); i++) {
+                if (isSet(keep, i)) {
+                    distinct[out++] = values[i];
+                }
+            }
+        });
+        return distinct;
+    }
+
+    private static int characteristics(boolean ordered) {
+        int characteristics = Spliterator.DISTINCT | Spliterator.NONNULL;
+        return ordered ? characteristics | Spliterator.ORDERED : characteristics;
+    }
+
+    /**
+     * @return a bitmap over the positions, set for every position whose value is kept
+     */
+    private static long[] firstOccurrences(IntToLongFunction values, Chunks chunks, boolean ordered) {
+        long[] keep = new long[(chunks.length + 63) >>> 6];
+
+        if (chunks.length == 0) {
+            return keep;
+        }
+
+        long[] range = chunks.reduce(chunk -> {
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+
+            for (int i = chunks.from(chunk); i < chunks.to(chunk); i++) {
+                long value = values.applyAsLong(i);
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            return new long[] {min, max};
+        }, (left, right) -> new long[] {Math.min(left[0], right[0]), Math.max(left[1], right[1])});
+
+        boolean concurrent = chunks.count > 1 && !ordered;
+        LongSet seen = LongSet.forRange(range[0], range[1], chunks.length, concurrent);
+
+        // A bitset lookup costs no more than a chunk-local lookup would: an ordered input then goes through it in
+        // one pass, in order.
+        Chunks pass = ordered && seen instanceof BitLongSet ? chunks.sequential() : chunks;
+
+        if (!ordered || !pass.parallel) {
+            pass.forEach(chunk -> {
+                for (int i = pass.from(chunk); i < pass.to(chunk); i++) {
+                    if (seen.add(values.applyAsLong(i))) {
+                        keep[i >>> 6] |= 1L << i;
+                    }
+                }
+            });
+            return keep;
+        }
+
+        chunks.forEach(chunk -> {
+            LongSet local = new HashLongSet(chunks.to(chunk) - chunks.from(chunk), false);
+
+            for (int i = chunks.from(chunk); i < chunks.to(chunk); i++) {
+                if (local.add(values.applyAsLong(i))) {
+                    keep[i >>> 6] |= 1L << i;
+                }
+            }
+        });
+        for (int i = 0; i < chunks.length; i++) {
+            if (isSet(keep, i) && !seen.add(values.applyAsLong(i))) {
+                keep[i >>> 6] &= ~(1L << i);
+            }
+        }
+        return keep;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Passes on the values of a sequential source that the growing set has not seen yet.
+     */
+    private static final class DistinctIntSpliterator extends Spliterators.AbstractIntSpliterator {
+        private final Spliterator.OfInt source;
+        private final LongSet seen;
+        private boolean found;
+
+        DistinctIntSpliterator(Spliterator.OfInt source, int characteristics) {
+            super(source.estimateSize(), characteristics);
+            this.source = source;
+            this.seen = new AdaptiveLongSet(source.getExactSizeIfKnown());
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            found = false;
+            while (!found && source.tryAdvance((int value) -> {
+                if (seen.add(value)) {
+                    found = true;
+                    action.accept(value);
+                }
+            })) {
+                // skip values seen before
+            }
+            return found;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            source.forEachRemaining((int value) -> {
+                if (seen.add(value)) {
+                    action.accept(value);
+                }
+            });
+        }
+    }
+
+    private static final class DistinctLongSpliterator extends Spliterators.AbstractLongSpliterator {
+        private final Spliterator.OfLong source;
+        private final LongSet seen;
+        private boolean found;
+
+        DistinctLongSpliterator(Spliterator.OfLong source, int characteristics) {
+            super(source.estimateSize(), characteristics);
+            this.source = source;
+            this.seen = new AdaptiveLongSet(source.getExactSizeIfKnown());
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            found = false;
+            while (!found && source.tryAdvance((long value) -> {
+                if (seen.add(value)) {
+                    found = true;
+                    action.accept(value);
+                }
+            })) {
+                // skip values seen before
+            }
+            return found;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            source.forEachRemaining((long value) -> {
+                if (seen.add(value)) {
+                    action.accept(value);
+                }
+            });
+        }
+    }
+
+    /**
+     * Input positions cut into chunks of a multiple of 64, so that no two chunks share a word of a position bitmap.
+     */
+    private static final class Chunks {
+        final int length;
+        final int size;
+        final int count;
+        final boolean parallel;
+        int[] offsets;
+
+        Chunks(int length, boolean parallel) {
+            int target = parallel ? length / (ForkJoinPool.getCommonPoolParallelism() * 4) : length;
+
+            this.length = length;
+            this.size = (int) Math.min(Integer.MAX_VALUE & ~63, (Math.max(target, MIN_CHUNK_SIZE) + 63L) & ~63L);
+            this.count = Math.max(1, (int) ((length + (long) size - 1) / size));
+            this.parallel = parallel && count > 1;
+        }
+
+        private Chunks(int length, int size, int count, boolean parallel) {
+            this.length = length;
+            this.size = size;
+            this.count = count;
+            this.parallel = parallel;
+        }
+
+        Chunks sequential() {
+            return new Chunks(length, size, count, false);
+        }
+
+        int from(int chunk) {
+            return chunk * size;
+        }
+
+        int to(int chunk) {
+            return (int) Math.min(length, (long) (chunk + 1) * size);
+        }
+
+        void forEach(IntConsumer action) {
+            IntStream chunks = IntStream.range(0, count);
+            (parallel ? chunks.parallel() : chunks).forEach(action);
+        }
+
+        <R> R reduce(IntFunction<R> chunkResult, BinaryOperator<R> combiner) {
+            IntStream chunks = IntStream.range(0, count);
+            return (parallel ? chunks.parallel() : chunks).mapToObj(chunkResult).reduce(combiner).get();
+        }
+
+        /**
+         * Counts the set positions and records where each chunk's survivors start in the output.
+         */
+        int count(long[] keep) {
+            int[] counts = new int[count];
+
+            forEach(chunk -> {
+                int survivors = 0;
+                for (int word = from(chunk) >>> 6; word < (to(chunk) + 63) >>> 6; word++) {
+                    survivors += Long.bitCount(keep[word]);
+                }
+                counts[chunk] = survivors;
+            });
+
+            offsets = new int[count];
+            int total = 0;
+            for (int chunk = 0; chunk < count; chunk++) {
+                offsets[chunk] = total;
+                total += counts[chunk];
+            }
+            return total;
+        }
+    }
+
+    private interface LongSet {
+
+        /**
+         * @return true if the value was not in the set yet
+         */
+        boolean add(long value);
+
+        /**
+         * A bitset if the range is dense enough, an open-addressing hash set for at most expectedValues otherwise.
+         */
+        static LongSet forRange(long min, long max, int expectedValues, boolean concurrent) {
+            long span = max - min;
+
+            if (span >= 0 && span < Math.min(BITSET_BITS_PER_VALUE * Math.max(expectedValues, 1), MAX_BITSET_BITS)) {
+                return new BitLongSet(min, span + 1, concurrent);
+            }
+            return new HashLongSet(expectedValues, concurrent);
+        }
+    }
+
+    private static final class BitLongSet implements LongSet {
+        private final long min;
+        private final AtomicLongArray words;
+        private final boolean concurrent;
+
+        BitLongSet(long min, long span, boolean concurrent) {
+            this.min = min;
+            this.words = new AtomicLongArray((int) ((span + 63) >>> 6));
+            this.concurrent = concurrent;
+        }
+
+        @Override
+        public boolean add(long value) {
+            long offset = value - min;
+            int word = (int) (offset >>> 6);
+            long bit = 1L << offset;
+
+            if (!concurrent) {
+                long bits = words.get(word);
+                words.lazySet(word, bits | bit);
+                return (bits & bit) == 0;
+            }
+
+            while (true) {
+                long bits = words.get(word);
+                if ((bits & bit) != 0) {
+                    return false;
+                }
+                if (words.compareAndSet(word, bits, bits | bit)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * The set of a sequential distinct(): a hash set until the values added so far span fewer than
+     * BITSET_BITS_PER_VALUE bits per value, then a bitset over that span that grows as the values spread, and a hash
+     * set again once a value would make it too sparse. Density is checked whenever the number of values doubles, so
+     * switching costs amortized constant time per value. A known number of input values counts towards the density,
+     * so a dense SIZED source goes into a bitset from its first value.
+     */
+    private static final class AdaptiveLongSet implements LongSet {
+        private final long expectedValues;
+        private HashLongSet hash = new HashLongSet(0, false);
+        private long[] bits;
+        // value of bit 0 of bits
+        private long base;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private long size;
+        private long nextCheck = 1;
+
+        /**
+         * @param expectedValues number of values the source will pass, or -1 if unknown
+         */
+        AdaptiveLongSet(long expectedValues) {
+            this.expectedValues = Math.min(expectedValues, MAX_BITSET_BITS);
+        }
+
+        @Override
+        public boolean add(long value) {
+            if (bits != null && !covers(value) && !growBits(value)) {
+                toHash();
+            }
+
+            boolean added;
+            if (bits != null) {
+                long offset = value - base;
+                long bit = 1L << offset;
+
+                added = (bits[(int) (offset >>> 6)] & bit) == 0;
+                bits[(int) (offset >>> 6)] |= bit;
+            } else {
+                added = hash.add(value);
+            }
+
+            if (added) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                if (++size == nextCheck) {
+                    nextCheck <<= 1;
+                    if (bits == null && isDense(min, max)) {
+                        toBits();
+                    }
+                }
+            }
+            return added;
+        }
+
+        private boolean covers(long value) {
+            return value >= base && Long.compareUnsigned(value - base, (long) bits.length << 6) < 0;
+        }
+
+        private long maxSpan() {
+            return Math.min(BITSET_BITS_PER_VALUE * Math.max(size, expectedValues), MAX_BITSET_BITS);
+        }
+
+        private boolean isDense(long from, long to) {
+            long span = to - from;
+            return span >= 0 && span < maxSpan();
+        }
+
+        private void toBits() {
+            allocate(min, max, 0, false);
+            hash.forEach(this::setBit);
+            hash = null;
+        }
+
+        private void toHash() {
+            long[] old = bits;
+
+            hash = new HashLongSet((int) Math.min(size, MAX_HASH_CAPACITY >>> 1), false);
+            bits = null;
+            forEachBit(old, base, hash::add);
+        }
+
+        /**
+         * Reallocates the bitset to also cover the value, at least doubling it towards the value, unless the span
+         * would then be too sparse.
+         */
+        private boolean growBits(long value) {
+            long from = Math.min(min, value);
+            long to = Math.max(max, value);
+
+            if (!isDense(from, to)) {
+                return false;
+            }
+
+            long[] old = bits;
+            long oldBase = base;
+            allocate(from, to, 2L * old.length, value < oldBase);
+            forEachBit(old, oldBase, this::setBit);
+            return true;
+        }
+
+        /**
+         * Allocates a bitset over at least [from, to] and at least minWords words unless that passes maxSpan(); the
+         * extra words go below from when growing downwards.
+         */
+        private void allocate(long from, long to, long minWords, boolean downwards) {
+            long first = from & ~63L;
+            long needed = ((to - first) >>> 6) + 1;
+            int words = (int) Math.max(needed, Math.min(minWords, (maxSpan() >>> 6) + 1));
+            long extra = (words - needed) << 6;
+
+            if (!downwards) {
+                base = first;
+            } else {
+                base = first < Long.MIN_VALUE + extra ? Long.MIN_VALUE : first - extra;
+            }
+            bits = new long[words];
+        }
+
+        private void setBit(long value) {
+            long offset = value - base;
+            bits[(int) (offset >>> 6)] |= 1L << offset;
+        }
+
+        private static void forEachBit(long[] bits, long base, LongConsumer action) {
+            for (int word = 0; word < bits.length; word++) {
+                for (long remaining = bits[word]; remaining != 0; remaining &= remaining - 1) {
+                    action.accept(base + ((long) word << 6) + Long.numberOfTrailingZeros(remaining));
+                }
+            }
+        }
+    }
+
+    /**
+     * Linear probing over a power-of-two table at most half full; Long.MIN_VALUE marks an empty slot and is tracked
+     * apart.
+     *
+     * A table that is not concurrent doubles whenever it would become more than half full. A concurrent table keeps
+     * the capacity it was sized with, so its users size it for every value they may add; once there are more than
+     * capacity / 2 values, or the capacity is MAX_HASH_CAPACITY and full, add() throws instead of probing forever.
+     */
+    private static final class HashLongSet implements LongSet {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private AtomicLongArray slots;
+        private int mask;
+        private int size;
+        private final boolean concurrent;
+        private final AtomicBoolean containsEmpty = new AtomicBoolean();
+
+        HashLongSet(int expectedValues, boolean concurrent) {
+            this.concurrent = concurrent;
+            allocate((int) Math.min(Long.highestOneBit(Math.max(2L * expectedValues - 1, 1)) << 1,
+                    MAX_HASH_CAPACITY));
+        }
+
+        @Override
+        public boolean add(long value) {
+            if (value == EMPTY) {
+                return containsEmpty.compareAndSet(false, true);
+            }
+            if (!concurrent && size >= (mask + 1) >>> 1) {
+                grow();
+            }
+
+            int slot = hash(value) & mask;
+            for (int probes = 0; probes <= mask; ) {
+                long current = slots.get(slot);
+
+                if (current == value) {
+                    return false;
+                }
+                if (current == EMPTY) {
+                    if (!concurrent) {
+                        slots.lazySet(slot, value);
+                        size++;
+                        return true;
+                    }
+                    if (slots.compareAndSet(slot, EMPTY, value)) {
+                        return true;
+                    }
+                    // another thread took the slot: look at it again
+                    continue;
+                }
+                slot = (slot + 1) & mask;
+                probes++;
+            }
+            throw new IllegalStateException("more than " + (mask + 1) + " distinct values");
+        }
+
+        void forEach(LongConsumer action) {
+            if (containsEmpty.get()) {
+                action.accept(EMPTY);
+            }
+            for (int i = 0; i < slots.length(); i++) {
+                long value = slots.get(i);
+
+                if (value != EMPTY) {
+                    action.accept(value);
+                }
+            }
+        }
+
+        private void grow() {
+            AtomicLongArray old = slots;
+
+            if (old.length() >= MAX_HASH_CAPACITY) {
+                throw new IllegalStateException("more than " + (MAX_HASH_CAPACITY >>> 1) + " distinct values");
+            }
+
+            allocate(old.length() << 1);
+            for (int i = 0; i < old.length(); i++) {
+                long value = old.get(i);
+
+                if (value != EMPTY) {
+                    int slot = hash(value) & mask;
+                    while (slots.get(slot) != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots.lazySet(slot, value);
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            slots = new AtomicLongArray(capacity);
+            mask = capacity - 1;
+            for (int i = 0; i < capacity; i++) {
+                slots.lazySet(i, EMPTY);
+            }
+        }
+
+        private static int hash(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
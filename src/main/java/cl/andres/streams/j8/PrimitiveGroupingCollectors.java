@@ -0,0 +1,276 @@
+package cl.andres.streams.j8;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * groupingBy() collectors for primitive keys.
+ *
+ * Collectors.groupingBy() boxes the key of every element and hashes it into a HashMap. These collectors take the key
+ * as a primitive char or int and use it directly as an index into an array of buckets, so the only boxing left is one
+ * key per group when the final Map is built. The resulting maps are equal to the ones groupingBy() returns for the
+ * same classifier and downstream collector.
+ *
+ * Buckets are stored in pages of 256 that are only allocated once a key falls into them, which keeps the full char
+ * range cheap when only a few initials are used. Combining two partial results for a parallel stream walks the pages
+ * and merges bucket by bucket.
+ */
+public final class PrimitiveGroupingCollectors {
+
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private PrimitiveGroupingCollectors() {
+    }
+
+    @FunctionalInterface
+    public interface ToCharFunction<T> {
+        char applyAsChar(T value);
+    }
+
+    public static <T> Collector<T, ?, Map<Character, List<T>>> groupingByChar(ToCharFunction<? super T> classifier) {
+        return groupingByChar(classifier, Collectors.toList());
+    }
+
+    public static <T, A, D> Collector<T, ?, Map<Character, D>> groupingByChar(ToCharFunction<? super T> classifier,
+                                                                               Collector<? super T, A, D> downstream) {
+        return grouping(value -> classifier.applyAsChar(value), Character.MIN_VALUE, Character.MAX_VALUE,
+                key -> (char) key, downstream);
+    }
+
+    /**
+     * Same result as groupingBy(classifier, counting()), without boxing a Long per element.
+     */
+    public static <T> Collector<T, ?, Map<Character, Long>> countingByChar(ToCharFunction<? super T> classifier) {
+        return counting(value -> classifier.applyAsChar(value), Character.MIN_VALUE, Character.MAX_VALUE,
+                key -> (char) key);
+    }
+
+    /**
+     * Groups by an int key that must fall into [minKey, maxKey]; a key outside the range fails the collection with an
+     * IllegalArgumentException.
+     */
+    public static <T, A, D> Collector<T, ?, Map<Integer, D>> groupingByInt(ToIntFunction<? super T> classifier,
+                                                                            int minKey, int maxKey,
+                                                                            Collector<? super T, A, D> downstream) {
+        return grouping(classifier, minKey, maxKey, key -> key, downstream);
+    }
+
+    public static <T> Collector<T, ?, Map<Integer, Long>> countingByInt(ToIntFunction<? super T> classifier,
+                                                                        int minKey, int maxKey) {
+        return counting(classifier, minKey, maxKey, key -> key);
+    }
+
+    private static <T, K, A, D> Collector<T, ?, Map<K, D>> grouping(ToIntFunction<? super T> classifier,
+                                                                    int minKey, int maxKey,
+                                                                    IntFunction<K> boxKey,
+                                                                    Collector<? super T, A, D> downstream) {
+        checkRange(minKey, maxKey);
+        Supplier<A> downstreamSupplier = downstream.supplier();
+        BiConsumer<A, ? super T> downstreamAccumulator = downstream.accumulator();
+        BinaryOperator<A> downstreamCombiner = downstream.combiner();
+        Function<A, D> downstreamFinisher = downstream.finisher();
+
+        Supplier<Buckets<A>> supplier = () -> new Buckets<>(minKey, maxKey);
+
+        BiConsumer<Buckets<A>, T> accumulator = (buckets, value) -> {
+            int index = buckets.indexOf(classifier.applyAsInt(value));
+            Object[] page = buckets.page(index);
+            @SuppressWarnings("unchecked")
+            A container = (A) page[index & PAGE_MASK];
+
+            if (container == null) {
+                container = downstreamSupplier.get();
+                page[index & PAGE_MASK] = container;
+            }
+            downstreamAccumulator.accept(container, value);
+        };
+
+        BinaryOperator<Buckets<A>> combiner = (left, right) -> {
+            for (int p = 0; p < right.pages.length; p++) {
+                Object[] rightPage = right.pages[p];
+
+                if (rightPage == null) {
+                    continue;
+                }
+                if (left.pages[p] == null) {
+                    left.pages[p] = rightPage;
+                    continue;
+                }
+
+                Object[] leftPage = left.pages[p];
+                for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                    @SuppressWarnings("unchecked")
+                    A r = (A) rightPage[slot];
+
+                    if (r != null) {
+                        @SuppressWarnings("unchecked")
+                        A l = (A) leftPage[slot];
+                        leftPage[slot] = l == null ? r : downstreamCombiner.apply(l, r);
+                    }
+                }
+            }
+            return left;
+        };
+
+        Function<Buckets<A>, Map<K, D>> finisher = buckets -> {
+            Map<K, D> groups = new HashMap<>();
+
+            for (int p = 0; p < buckets.pages.length; p++) {
+                Object[] page = buckets.pages[p];
+
+                if (page == null) {
+                    continue;
+                }
+                for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                    @SuppressWarnings("unchecked")
+                    A container = (A) page[slot];
+
+                    if (container != null) {
+                        int key = buckets.minKey + ((p << PAGE_SHIFT) | slot);
+                        groups.put(boxKey.apply(key), downstreamFinisher.apply(container));
+                    }
+                }
+            }
+            return groups;
+        };
+
+        return Collector.of(supplier, accumulator, combiner, finisher);
+    }
+
+    private static <T, K> Collector<T, ?, Map<K, Long>> counting(ToIntFunction<? super T> classifier,
+                                                                 int minKey, int maxKey,
+                                                                 IntFunction<K> boxKey) {
+        checkRange(minKey, maxKey);
+
+        Supplier<Counts> supplier = () -> new Counts(minKey, maxKey);
+
+        BiConsumer<Counts, T> accumulator = (counts, value) -> {
+            int index = counts.indexOf(classifier.applyAsInt(value));
+            counts.page(index)[index & PAGE_MASK]++;
+        };
+
+        BinaryOperator<Counts> combiner = (left, right) -> {
+            for (int p = 0; p < right.pages.length; p++) {
+                long[] rightPage = right.pages[p];
+
+                if (rightPage == null) {
+                    continue;
+                }
+                if (left.pages[p] == null) {
+                    left.pages[p] = rightPage;
+                    continue;
+                }
+
+                long[] leftPage = left.pages[p];
+                for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                    leftPage[slot] += rightPage[slot];
+                }
+            }
+            return left;
+        };
+
+        Function<Counts, Map<K, Long>> finisher = counts -> {
+            Map<K, Long> groups = new HashMap<>();
+
+            for (int p = 0; p < counts.pages.length; p++) {
+                long[] page = counts.pages[p];
+
+                if (page == null) {
+                    continue;
+                }
+                for (int slot = 0; slot < PAGE_SIZE; slot++) {
+                    if (page[slot] != 0) {
+                        int key = counts.minKey + ((p << PAGE_SHIFT) | slot);
+                        groups.put(boxKey.apply(key), page[slot]);
+                    }
+                }
+            }
+            return groups;
+        };
+
+        return Collector.of(supplier, accumulator, combiner, finisher);
+    }
+
+    private static void checkRange(int minKey, int maxKey) {
+        if (minKey > maxKey) {
+            throw new IllegalArgumentException("minKey " + minKey + " is greater than maxKey " + maxKey);
+        }
+        if ((long) maxKey - minKey >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("key range [" + minKey + ", " + maxKey + "] is too wide");
+        }
+    }
+
+    private static int pageCount(int minKey, int maxKey) {
+        return ((maxKey - minKey) >>> PAGE_SHIFT) + 1;
+    }
+
+    private static int indexOf(int key, int minKey, int maxKey) {
+        if (key < minKey || key > maxKey) {
+            throw new IllegalArgumentException("key " + key + " outside [" + minKey + ", " + maxKey + "]");
+        }
+        return key - minKey;
+    }
+
+    private static final class Buckets<A> {
+        final int minKey;
+        final int maxKey;
+        final Object[][] pages;
+
+        Buckets(int minKey, int maxKey) {
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.pages = new Object[pageCount(minKey, maxKey)][];
+        }
+
+        int indexOf(int key) {
+            return PrimitiveGroupingCollectors.indexOf(key, minKey, maxKey);
+        }
+
+        Object[] page(int index) {
+            Object[] page = pages[index >>> PAGE_SHIFT];
+
+            if (page == null) {
+                page = new Object[PAGE_SIZE];
+                pages[index >>> PAGE_SHIFT] = page;
+            }
+            return page;
+        }
+    }
+
+    private static final class Counts {
+        final int minKey;
+        final int maxKey;
+        final long[][] pages;
+
+        Counts(int minKey, int maxKey) {
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+            this.pages = new long[pageCount(minKey, maxKey)][];
+        }
+
+        int indexOf(int key) {
+            return PrimitiveGroupingCollectors.indexOf(key, minKey, maxKey);
+        }
+
+        long[] page(int index) {
+            long[] page = pages[index >>> PAGE_SHIFT];
+
+            if (page == null) {
+                page = new long[PAGE_SIZE];
+                pages[index >>> PAGE_SHIFT] = page;
+            }
+            return page;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package cl.andres.streams.j8;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Random number sources for parallel streams that give the same numbers from the same seed on any number of threads.
+ *
+ * Stream.generate(Math::random) draws from one shared Random whose seed every thread updates with a CAS, so under
+ * parallel() the threads queue on it; the stream is not SIZED and cannot be reproduced. SplittableRandom.longs()
+ * avoids the contention by splitting the generator along with the spliterator, but then the numbers depend on how the
+ * stream happened to be split.
+ *
+ * Here the nth number is computed from the seed and n alone: SplitMix64, the generator behind SplittableRandom, only
+ * adds a constant gamma to its state for every number and scrambles the result, so its nth number is
+ * mix64(seed + (n + 1) * gamma). Every source is a Sequence: SIZED, split in halves, with O(1) skip(), and its
+ * numbers are exactly those new SplittableRandom(seed) returns one by one, however the stream is split.
+ *
+ * Bounded longs use the rejection method of SplittableRandom; a rejected number is replaced by scrambling it again,
+ * so the nth element still only depends on the seed and n.
+ */
+public final class RandomStreams {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private static final String[] FIRST_NAMES = {
+            "Ana", "Andres", "Bill", "Camila", "Diego", "Elena", "Felipe", "Gabriela", "Ignacio", "Jeff", "Josefa",
+            "Mark", "Martina", "Matias", "Sofia", "Tomas"
+    };
+    private static final String[] LAST_NAMES = {
+            "Bezos", "Contreras", "Diaz", "Fuentes", "Gates", "Gonzalez", "Munoz", "Perez", "Rojas", "Silva",
+            "Soto", "Zuckerberg"
+    };
+    static final double MIN_SALARY = 30000;
+    static final double MAX_SALARY = 400000;
+
+    private RandomStreams() {
+    }
+
+    /**
+     * @return the numbers new SplittableRandom(seed).nextLong() returns, in order
+     */
+    public static Sequence.OfLong longs(long seed) {
+        return Sequence.indexedLong(index -> longAt(seed, index));
+    }
+
+    /**
+     * @return longs uniformly distributed in [origin, bound)
+     */
+    public static Sequence.OfLong longs(long seed, long origin, long bound) {
+        checkRange(origin < bound);
+        return Sequence.indexedLong(index -> bounded(longAt(seed, index), origin, bound));
+    }
+
+    /**
+     * @return the numbers new SplittableRandom(seed).nextDouble() returns, in order: doubles in [0, 1)
+     */
+    public static Sequence.OfDouble doubles(long seed) {
+        return Sequence.indexedDouble(index -> toDouble(longAt(seed, index)));
+    }
+
+    public static Sequence.OfDouble doubles(long seed, double origin, double bound) {
+        checkRange(origin < bound && bound - origin < Double.POSITIVE_INFINITY);
+        return Sequence.indexedDouble(index -> {
+            double value = toDouble(longAt(seed, index)) * (bound - origin) + origin;
+            return value < bound ? value : Math.nextDown(bound);
+        });
+    }
+
+    /**
+     * Synthetic payroll for load tests: employees with ids 1 to count, a random name and a random salary in
+     * [MIN_SALARY, MAX_SALARY) rounded to hundreds.
+     */
+    public static Sequence.Of<Employee> employees(long seed, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("negative count: " + count);
+        }
+
+        return Sequence.<Employee>indexed(index -> {
+            long bits = longAt(seed, index);
+            long salaryBits = mix64(bits);
+            String name = FIRST_NAMES[(int) ((bits >>> 32) % FIRST_NAMES.length)] + " "
+                    + LAST_NAMES[(int) ((bits & 0xffffffffL) % LAST_NAMES.length)];
+            double salary = Math.floor((toDouble(salaryBits) * (MAX_SALARY - MIN_SALARY) + MIN_SALARY) / 100) * 100;
+
+            return new Employee((int) index + 1, name, salary);
+        }).limit(count);
+    }
+
+    static long longAt(long seed, long index) {
+        return mix64(seed + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Variant 13 of Stafford's 64-bit mix function, as used by SplittableRandom.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double toDouble(long bits) {
+        return (bits >>> 11) * DOUBLE_UNIT;
+    }
+
+    private static long bounded(long r, long origin, long bound) {
+        long n = bound - origin;
+        long m = n - 1;
+
+        if ((n & m) == 0L) {
+            return (r & m) + origin;
+        }
+        if (n > 0L) {
+            for (long u = r >>> 1; u + m - (r = u % n) < 0L; u = mix64(u) >>> 1) {
+                // rejected: u falls in the last, incomplete interval of n values
+            }
+            return r + origin;
+        }
+        // the range does not fit in a long: retry until the number falls inside it
+        while (r < origin || r >= bound) {
+            r = mix64(r);
+        }
+        return r;
+    }
+
+    private static void checkRange(boolean valid) {
+        if (!valid) {
+            throw new IllegalArgumentException("bound must be greater than origin");
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package cl.andres.streams.j8;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Asynchronous SalaryChangeSink: publish() stores the change in a bounded lock-free ring buffer and returns, and a
+ * background thread drains the buffer in batches into a SalaryChangeWriter.
+ *
+ * The buffer is a multi-producer, single-consumer array queue in the style of Vyukov's bounded queue: each slot has a
+ * sequence number that tells producers whether the slot is free and tells the consumer whether the slot has been
+ * filled. The fields of a change are stored in parallel arrays, so publishing allocates nothing and never formats a
+ * string; a producer only contends with other producers on one compare-and-set of the tail.
+ *
+ * When the buffer is full the Backpressure policy decides whether the producer waits for a free slot or drops the
+ * change; dropped changes are counted. Changes published after close(), or after the background thread died of an
+ * Error thrown by the writer, are dropped as well: a producer that claimed a slot while the sink was closing marks
+ * it cancelled instead of filling it, so every change is counted either as published and written, or as dropped.
+ */
+public class RingBufferSalaryChangeSink implements SalaryChangeSink, AutoCloseable {
+
+    public enum Backpressure {
+        /**
+         * The producer parks until the writer frees a slot; no change is lost unless the sink is closed, or its
+         * background thread dies, while the producer waits.
+         */
+        BLOCK,
+        /**
+         * The change is dropped and counted; the producer never waits.
+         */
+        DROP
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    private static final long IDLE_PARK_NANOS = 100_000L;
+    private static final long FULL_PARK_NANOS = 10_000L;
+
+    // stored in a claimed slot whose change was dropped because the sink closed in the meantime
+    private static final Employee CANCELLED = new Employee(null, null, 0.0);
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Employee[] employees;
+    private final double[] oldSalaries;
+    private final double[] newSalaries;
+    private final double[] percentages;
+
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+    private long cancelled;
+    // head as of the last ended batch, which flush() waits for
+    private volatile long consumed;
+    private volatile long written;
+
+    private final SalaryChangeWriter writer;
+    private final Backpressure backpressure;
+    private final int batchSize;
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    public RingBufferSalaryChangeSink(SalaryChangeWriter writer) {
+        this(writer, DEFAULT_CAPACITY, Backpressure.BLOCK, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param capacity number of changes the buffer holds; rounded up to a power of two
+     * @param batchSize maximum number of changes written between two SalaryChangeWriter.endBatch() calls
+     */
+    public RingBufferSalaryChangeSink(SalaryChangeWriter writer, int capacity, Backpressure backpressure,
+                                      int batchSize) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 2 and 2^30: " + capacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.employees = new Employee[size];
+        this.oldSalaries = new double[size];
+        this.newSalaries = new double[size];
+        this.percentages = new double[size];
+
+        this.writer = writer;
+        this.backpressure = backpressure;
+        this.batchSize = batchSize;
+        this.drainer = new Thread(this::drainLoop, "salary-change-writer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /**
+     * Sink writing to the console, draining whatever is left when the JVM exits.
+     */
+    public static RingBufferSalaryChangeSink console() {
+        RingBufferSalaryChangeSink sink = new RingBufferSalaryChangeSink(SalaryChangeWriter.console());
+        Runtime.getRuntime().addShutdownHook(new Thread(sink::close, "salary-change-writer-shutdown"));
+        return sink;
+    }
+
+    @Override
+    public void publish(Employee employee, double oldSalary, double newSalary, double percentage) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+
+        long position = tail.get();
+        int slot;
+
+        for (;;) {
+            slot = (int) position & mask;
+            long available = sequences.get(slot) - position;
+
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                if (backpressure == Backpressure.DROP || closed || !drainer.isAlive()) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.parkNanos(FULL_PARK_NANOS);
+                position = tail.get();
+            } else {
+                position = tail.get();
+            }
+        }
+
+        // The claim is visible before closed is read again, so a drainer that did not see it yet has not seen
+        // closed either and will wait for the slot.
+        if (closed) {
+            employees[slot] = CANCELLED;
+            sequences.lazySet(slot, position + 1);
+            dropped.increment();
+            return;
+        }
+
+        employees[slot] = employee;
+        oldSalaries[slot] = oldSalary;
+        newSalaries[slot] = newSalary;
+        percentages[slot] = percentage;
+        sequences.lazySet(slot, position + 1);
+        published.increment();
+    }
+
+    /**
+     * Blocks until every change accepted before the call has been passed to the writer and its batch ended.
+     */
+    @Override
+    public void flush() {
+        long target = tail.get();
+
+        while (consumed < target && drainer.isAlive()) {
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Stops accepting changes, writes the ones already accepted and closes the writer.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(drainer);
+
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getWriteFailureCount() {
+        return writeFailures.sum();
+    }
+
+    private void drainLoop() {
+        try {
+            for (;;) {
+                int drained = drainBatch();
+
+                if (drained == 0) {
+                    if (closed && isDrained()) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+        } finally {
+            // also reached when the writer throws an Error: from then on publish() drops instead of waiting
+            closed = true;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                writeFailures.increment();
+            }
+        }
+    }
+
+    /**
+     * Called once closed is visible: every slot claimed so far has been consumed, and one more pass finds nothing
+     * with the tail unchanged.
+     */
+    private boolean isDrained() {
+        long observed = tail.get();
+
+        return head == observed && drainBatch() == 0 && tail.get() == observed;
+    }
+
+    private int drainBatch() {
+        int drained = 0;
+
+        while (drained < batchSize) {
+            int slot = (int) head & mask;
+
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+
+            Employee employee = employees[slot];
+            employees[slot] = null;
+            if (employee == CANCELLED) {
+                cancelled++;
+            } else {
+                try {
+                    writer.write(employee, oldSalaries[slot], newSalaries[slot], percentages[slot]);
+                } catch (IOException | RuntimeException e) {
+                    writeFailures.increment();
+                }
+            }
+
+            sequences.lazySet(slot, head + mask + 1);
+            head++;
+            drained++;
+        }
+
+        if (drained > 0) {
+            try {
+                writer.endBatch();
+            } catch (IOException | RuntimeException e) {
+                writeFailures.increment();
+            }
+            written = head - cancelled;
+            consumed = head;
+        }
+
+        return drained;
+    }
+}
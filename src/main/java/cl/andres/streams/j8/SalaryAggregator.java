@@ -0,0 +1,199 @@
+package cl.andres.streams.j8;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Single pass, unboxed salary aggregation.
+ *
+ * One pass over the values computes count, sum, min and max; average and any linear projection a * salary + b (for
+ * instance the cost of a raise) are derived from those, so none of them needs another scan or a boxed Double.
+ *
+ * The input is always reduced along the same tree: ranges are halved down to blocks of LEAF_SIZE values, each block
+ * is summed with Neumaier compensated summation, and partial results are merged pairwise in index order. Only the
+ * execution of the tree changes between sequential and parallel mode, which makes both produce bit-for-bit identical
+ * results regardless of how many threads take part.
+ */
+public final class SalaryAggregator {
+
+    static final int LEAF_SIZE = 4096;
+
+    private SalaryAggregator() {
+    }
+
+    public static SalaryAggregate aggregate(double[] values) {
+        return aggregate(values, false);
+    }
+
+    public static SalaryAggregate aggregate(double[] values, boolean parallel) {
+        return aggregate(values, 0, values.length, parallel);
+    }
+
+    public static SalaryAggregate aggregate(double[] values, int from, int to, boolean parallel) {
+        if (from < 0 || to > values.length || from > to) {
+            throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of array of length " + values.length);
+        }
+        return aggregate(i -> values[i], from, to, parallel);
+    }
+
+    public static SalaryAggregate aggregate(ColumnarEmployeeTable table, boolean parallel) {
+        return aggregate(table.salaryColumn(), parallel);
+    }
+
+    public static <T> SalaryAggregate aggregate(T[] items, ToDoubleFunction<? super T> salary, boolean parallel) {
+        return aggregate(i -> salary.applyAsDouble(items[i]), 0, items.length, parallel);
+    }
+
+    private static SalaryAggregate aggregate(IntToDoubleFunction values, int from, int to, boolean parallel) {
+        AggregateTask task = new AggregateTask(values, from, to, parallel);
+
+        if (!parallel) {
+            return task.compute();
+        }
+        return PipelineExecutor.invoke(task);
+    }
+
+    private static SalaryAggregate leaf(IntToDoubleFunction values, int from, int to) {
+        double sum = 0.0;
+        double compensation = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int i = from; i < to; i++) {
+            double value = values.applyAsDouble(i);
+            double t = sum + value;
+
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        return new SalaryAggregate(to - from, sum, compensation, min, max);
+    }
+
+    private static final class AggregateTask extends RecursiveTask<SalaryAggregate> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntToDoubleFunction values;
+        private final int from;
+        private final int to;
+        private final boolean parallel;
+
+        AggregateTask(IntToDoubleFunction values, int from, int to, boolean parallel) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+            this.parallel = parallel;
+        }
+
+        /**
+         * Also called directly, without a pool, for sequential aggregation; it then walks the same tree in the
+         * calling thread.
+         */
+        @Override
+        protected SalaryAggregate compute() {
+            if (to - from <= LEAF_SIZE) {
+                return leaf(values, from, to);
+            }
+
+            int mid = from + ((to - from) >>> 1);
+            AggregateTask left = new AggregateTask(values, from, mid, parallel);
+            AggregateTask right = new AggregateTask(values, mid, to, parallel);
+
+            if (!parallel) {
+                return left.compute().combine(right.compute());
+            }
+
+            right.fork();
+            SalaryAggregate leftResult = left.compute();
+            return leftResult.combine(right.join());
+        }
+    }
+
+    /**
+     * Result of an aggregation; immutable.
+     */
+    public static final class SalaryAggregate {
+        private final long count;
+        private final double sum;
+        private final double compensation;
+        private final double min;
+        private final double max;
+
+        SalaryAggregate(long count, double sum, double compensation, double min, double max) {
+            this.count = count;
+            this.sum = sum;
+            this.compensation = compensation;
+            this.min = min;
+            this.max = max;
+        }
+
+        SalaryAggregate combine(SalaryAggregate other) {
+            double t = sum + other.sum;
+            double error = Math.abs(sum) >= Math.abs(other.sum)
+                    ? (sum - t) + other.sum
+                    : (other.sum - t) + sum;
+
+            return new SalaryAggregate(count + other.count, t, compensation + other.compensation + error,
+                    Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum + compensation;
+        }
+
+        /**
+         * @return the smallest value, or Double.POSITIVE_INFINITY if there were none
+         */
+        public double getMin() {
+            return min;
+        }
+
+        /**
+         * @return the largest value, or Double.NEGATIVE_INFINITY if there were none
+         */
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * @return the arithmetic mean, or zero if there were no values
+         */
+        public double getAverage() {
+            return count > 0 ? getSum() / count : 0.0;
+        }
+
+        /**
+         * Sum of scale * value + offset over every value, e.g. projectedSum(percentage / 100, 0) for the total cost
+         * of a raise.
+         */
+        public double projectedSum(double scale, double offset) {
+            return scale * getSum() + offset * count;
+        }
+
+        public double projectedAverage(double scale, double offset) {
+            return count > 0 ? projectedSum(scale, offset) / count : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return "SalaryAggregate{" +
+                    "count=" + count +
+                    ", sum=" + getSum() +
+                    ", min=" + min +
+                    ", average=" + getAverage() +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+}
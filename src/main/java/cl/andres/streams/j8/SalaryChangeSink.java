@@ -0,0 +1,47 @@
+package cl.andres.streams.j8;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Receives every salary change made through Employee.salaryIncrement() or a PayrollUpdater.
+ *
+ * publish() is called on the thread that changed the salary, right after the change, so implementations must be
+ * thread-safe and should return quickly; formatting and I/O belong on a background thread, see
+ * RingBufferSalaryChangeSink.
+ */
+public interface SalaryChangeSink {
+
+    void publish(Employee employee, double oldSalary, double newSalary, double percentage);
+
+    /**
+     * Blocks until every change published before the call has been handled.
+     */
+    default void flush() {
+    }
+
+    static SalaryChangeSink noOp() {
+        return (employee, oldSalary, newSalary, percentage) -> {
+        };
+    }
+
+    /**
+     * @return a sink that publishes every change to both sinks, first to this one
+     */
+    default SalaryChangeSink andThen(SalaryChangeSink other) {
+        SalaryChangeSink first = this;
+
+        return new SalaryChangeSink() {
+            @Override
+            public void publish(Employee employee, double oldSalary, double newSalary, double percentage) {
+                first.publish(employee, oldSalary, newSalary, percentage);
+                other.publish(employee, oldSalary, newSalary, percentage);
+            }
+
+            @Override
+            public void flush() {
+                first.flush();
+                other.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package cl.andres.streams.j8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Output side of a RingBufferSalaryChangeSink. Only ever called from the sink's background thread: write() once per
+ * change, then endBatch() after each drained batch.
+ */
+public interface SalaryChangeWriter extends AutoCloseable {
+
+    void write(Employee employee, double oldSalary, double newSalary, double percentage) throws IOException;
+
+    default void endBatch() throws IOException {
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /**
+     * Same message salaryIncrement() used to print: "name's salary raised in 10.0%".
+     */
+    static SalaryChangeWriter console() {
+        return stream(System.out);
+    }
+
+    static SalaryChangeWriter stream(PrintStream out) {
+        StringBuilder line = new StringBuilder(128);
+
+        return new SalaryChangeWriter() {
+            @Override
+            public void write(Employee employee, double oldSalary, double newSalary, double percentage) {
+                line.setLength(0);
+                line.append(employee.getName()).append("'s salary raised in ").append(percentage).append("%\n");
+                out.append(line);
+            }
+
+            @Override
+            public void endBatch() {
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Appends one tab-separated line per change (id, name, old salary, new salary, percentage) to the file.
+     */
+    static SalaryChangeWriter file(Path path) throws IOException {
+        Writer out = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE), 1 << 16);
+
+        return new SalaryChangeWriter() {
+            @Override
+            public void write(Employee employee, double oldSalary, double newSalary, double percentage)
+                    throws IOException {
+                out.write(String.valueOf(employee.getId()));
+                out.write('\t');
+                out.write(employee.getName());
+                out.write('\t');
+                out.write(Double.toString(oldSalary));
+                out.write('\t');
+                out.write(Double.toString(newSalary));
+                out.write('\t');
+                out.write(Double.toString(percentage));
+                out.write('\n');
+            }
+
+            @Override
+            public void endBatch() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    static SalaryChangeWriter noOp() {
+        return (employee, oldSalary, newSalary, percentage) -> {
+        };
+    }
+}
@@ -0,0 +1,289 @@
+package cl.andres.streams.j8;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import cl.andres.streams.j8.StreamsJ8.Employee;
+
+/**
+ * Salary statistics per group, kept up to date as employees are added, removed or raised instead of being recomputed
+ * with a full scan.
+ *
+ * Each group keeps its count, sum, mean and sum of squared deviations (Welford's algorithm, run backwards for a
+ * removal), so those are updated in constant time. Minimum and maximum come from a sorted multiset of the group's
+ * salaries, which a removal cannot invalidate; it costs O(log n) per change.
+ *
+ * The view is a SalaryChangeSink: registered with Employee.setSalaryChangeSink() (usually through andThen()) or
+ * handed to a PayrollUpdater, it applies every raise of a member employee. Employees are members from add() to
+ * remove(), by identity, and stay in the group their key had when they were added. A change always moves the
+ * employee to its current salary, so raises that reach the view out of order still leave it correct.
+ *
+ * Changes to different groups only contend on a shared read lock; snapshot() takes the write lock, so the statistics
+ * it returns for all groups are consistent with each other.
+ */
+public class SalaryStatisticsView<K> implements SalaryChangeSink {
+
+    private final Function<? super Employee, ? extends K> groupKey;
+    private final ConcurrentMap<K, Group> groups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Employee, Member> members = new ConcurrentHashMap<>();
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
+    public SalaryStatisticsView(Function<? super Employee, ? extends K> groupKey) {
+        this.groupKey = groupKey;
+    }
+
+    /**
+     * @return false if the employee already was a member
+     */
+    public boolean add(Employee employee) {
+        K key = groupKey.apply(employee);
+        Group group = groups.computeIfAbsent(key, k -> new Group());
+
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (group) {
+                double salary = employee.getSalary();
+
+                if (members.putIfAbsent(employee, new Member(group, salary)) != null) {
+                    return false;
+                }
+                group.add(salary);
+                return true;
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<? extends Employee> employees) {
+        for (Employee employee : employees) {
+            add(employee);
+        }
+    }
+
+    /**
+     * @return false if the employee was not a member
+     */
+    public boolean remove(Employee employee) {
+        Member member = members.get(employee);
+
+        if (member == null) {
+            return false;
+        }
+
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (member.group) {
+                if (!members.remove(employee, member)) {
+                    return false;
+                }
+                member.group.remove(member.salary);
+                return true;
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(Employee employee) {
+        return members.containsKey(employee);
+    }
+
+    /**
+     * Moves a member employee from the salary the view last saw to its current salary; other employees are ignored.
+     */
+    @Override
+    public void publish(Employee employee, double oldSalary, double newSalary, double percentage) {
+        Member member = members.get(employee);
+
+        if (member == null) {
+            return;
+        }
+
+        snapshotLock.readLock().lock();
+        try {
+            synchronized (member.group) {
+                double salary = employee.getSalary();
+
+                if (members.get(employee) == member && salary != member.salary) {
+                    member.group.remove(member.salary);
+                    member.group.add(salary);
+                    member.salary = salary;
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the statistics of the group, or null if it has no members
+     */
+    public SalaryStatistics statistics(K key) {
+        Group group = groups.get(key);
+
+        if (group == null) {
+            return null;
+        }
+        synchronized (group) {
+            return group.count == 0 ? null : group.toStatistics();
+        }
+    }
+
+    /**
+     * @return the statistics of every group with at least one member, all taken at the same moment
+     */
+    public Map<K, SalaryStatistics> snapshot() {
+        Map<K, SalaryStatistics> snapshot = new HashMap<>();
+
+        snapshotLock.writeLock().lock();
+        try {
+            for (Map.Entry<K, Group> entry : groups.entrySet()) {
+                Group group = entry.getValue();
+
+                if (group.count > 0) {
+                    snapshot.put(entry.getKey(), group.toStatistics());
+                }
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private static final class Member {
+        final Group group;
+        double salary;
+
+        Member(Group group, double salary) {
+            this.group = group;
+            this.salary = salary;
+        }
+    }
+
+    /**
+     * Running statistics of one group; guarded by its own monitor.
+     */
+    private static final class Group {
+        long count;
+        double sum;
+        double mean;
+        double squaredDeviations;
+        final TreeMap<Double, int[]> salaries = new TreeMap<>();
+
+        void add(double salary) {
+            count++;
+            sum += salary;
+
+            double delta = salary - mean;
+            mean += delta / count;
+            squaredDeviations += delta * (salary - mean);
+
+            salaries.computeIfAbsent(salary, s -> new int[1])[0]++;
+        }
+
+        void remove(double salary) {
+            count--;
+            if (count == 0) {
+                sum = 0.0;
+                mean = 0.0;
+                squaredDeviations = 0.0;
+            } else {
+                sum -= salary;
+
+                double oldMean = mean;
+                mean -= (salary - oldMean) / count;
+                squaredDeviations = Math.max(0.0, squaredDeviations - (salary - oldMean) * (salary - mean));
+            }
+
+            int[] occurrences = salaries.get(salary);
+            if (--occurrences[0] == 0) {
+                salaries.remove(salary);
+            }
+        }
+
+        SalaryStatistics toStatistics() {
+            return new SalaryStatistics(count, sum, mean, squaredDeviations, salaries.firstKey(), salaries.lastKey());
+        }
+    }
+
+    /**
+     * Immutable statistics of a group at one moment.
+     */
+    public static final class SalaryStatistics {
+        private final long count;
+        private final double sum;
+        private final double mean;
+        private final double squaredDeviations;
+        private final double min;
+        private final double max;
+
+        SalaryStatistics(long count, double sum, double mean, double squaredDeviations, double min, double max) {
+            this.count = count;
+            this.sum = sum;
+            this.mean = mean;
+            this.squaredDeviations = squaredDeviations;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getAverage() {
+            return mean;
+        }
+
+        /**
+         * Population variance.
+         */
+        public double getVariance() {
+            return squaredDeviations / count;
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        /**
+         * Statistics of the union of both groups, with Chan's formula for the combined variance.
+         */
+        public SalaryStatistics combine(SalaryStatistics other) {
+            long combinedCount = count + other.count;
+            double delta = other.mean - mean;
+            double combinedMean = mean + delta * other.count / combinedCount;
+            double combinedDeviations = squaredDeviations + other.squaredDeviations
+                    + delta * delta * count * other.count / combinedCount;
+
+            return new SalaryStatistics(combinedCount, sum + other.sum, combinedMean, combinedDeviations,
+                    Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s{count=%d, sum=%f, min=%f, average=%f, max=%f, standardDeviation=%f}",
+                    this.getClass().getSimpleName(), count, sum, min, mean, max, getStandardDeviation());
+        }
+    }
+}
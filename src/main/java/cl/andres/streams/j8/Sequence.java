@@ -0,0 +1,389 @@
+package cl.andres.streams.j8;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sources for sequences whose nth element can be computed directly, as a replacement for Stream.iterate().
+ *
+ * Stream.iterate(2, i -> i * 2) can only produce an element from the one before it: its spliterator does not split,
+ * so parallel() runs on a single thread, and skip(n) has to generate and throw away n elements. A Sequence knows the
+ * value at every index, so skip() and limit() only move its bounds, and its streams are SIZED and SUBSIZED and split
+ * in halves like IntStream.range() does.
+ *
+ * Sequences are unbounded until limit() is called; an unbounded sequence holds Long.MAX_VALUE elements. Skip and limit
+ * the Sequence, not its stream: Stream.skip() on the stream still walks the skipped elements.
+ *
+ * Long sequences wrap around on overflow exactly like the equivalent iterate() would, since the nth element of an
+ * arithmetic or geometric sequence is computed with the same wrapping arithmetic. Double sequences compute every
+ * element from its index (first + n * step, first * ratio^n), which accumulates no rounding error and gives the same
+ * values however the stream is split, but may differ in the last bits from repeated additions or multiplications.
+ */
+public abstract class Sequence {
+
+    final long from;
+    final long size;
+
+    Sequence(long from, long size) {
+        this.from = from;
+        this.size = size;
+    }
+
+    /**
+     * first, first + step, first + 2 * step, ...
+     */
+    public static OfLong arithmetic(long first, long step) {
+        return new OfLong(0, Long.MAX_VALUE, index -> first + index * step, value -> value + step);
+    }
+
+    public static OfDouble arithmetic(double first, double step) {
+        return new OfDouble(0, Long.MAX_VALUE, index -> first + index * step);
+    }
+
+    /**
+     * first, first * ratio, first * ratio^2, ...
+     */
+    public static OfLong geometric(long first, long ratio) {
+        return new OfLong(0, Long.MAX_VALUE, index -> first * power(ratio, index), value -> value * ratio);
+    }
+
+    public static OfDouble geometric(double first, double ratio) {
+        return new OfDouble(0, Long.MAX_VALUE, index -> first * Math.pow(ratio, index));
+    }
+
+    /**
+     * The sequence of valueAt(0), valueAt(1), ...; valueAt must be a pure function of the index.
+     */
+    public static OfLong indexedLong(LongUnaryOperator valueAt) {
+        return new OfLong(0, Long.MAX_VALUE, valueAt, null);
+    }
+
+    public static OfDouble indexedDouble(LongToDoubleFunction valueAt) {
+        return new OfDouble(0, Long.MAX_VALUE, valueAt);
+    }
+
+    public static <T> Of<T> indexed(LongFunction<? extends T> valueAt) {
+        return new Of<>(0, Long.MAX_VALUE, valueAt);
+    }
+
+    /**
+     * base^exponent with the wrapping arithmetic of repeated long multiplication, by squaring.
+     */
+    static long power(long base, long exponent) {
+        long result = 1;
+
+        while (exponent != 0) {
+            if ((exponent & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    long skipped(long n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative skip: " + n);
+        }
+        return Math.min(n, size);
+    }
+
+    long limited(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("negative limit: " + maxSize);
+        }
+        return Math.min(maxSize, size);
+    }
+
+    long absolute(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of sequence of size " + size);
+        }
+        return from + index;
+    }
+
+    public static final class OfLong extends Sequence {
+        private final LongUnaryOperator valueAt;
+        private final LongUnaryOperator next;
+
+        /**
+         * @param next the element after a given one, cheaper than valueAt for walking the sequence; null if none
+         */
+        OfLong(long from, long size, LongUnaryOperator valueAt, LongUnaryOperator next) {
+            super(from, size);
+            this.valueAt = valueAt;
+            this.next = next;
+        }
+
+        public long get(long index) {
+            return valueAt.applyAsLong(absolute(index));
+        }
+
+        public OfLong skip(long n) {
+            long skipped = skipped(n);
+            return new OfLong(from + skipped, size - skipped, valueAt, next);
+        }
+
+        public OfLong limit(long maxSize) {
+            return new OfLong(from, limited(maxSize), valueAt, next);
+        }
+
+        public Spliterator.OfLong spliterator() {
+            return new LongSpliterator(from, from + size);
+        }
+
+        public LongStream stream() {
+            return StreamSupport.longStream(spliterator(), false);
+        }
+
+        public LongStream parallelStream() {
+            return StreamSupport.longStream(spliterator(), true);
+        }
+
+        private final class LongSpliterator extends IndexSpliterator implements Spliterator.OfLong {
+
+            LongSpliterator(long index, long fence) {
+                super(index, fence);
+            }
+
+            @Override
+            public Spliterator.OfLong trySplit() {
+                long mid = mid();
+                return mid < 0 ? null : new LongSpliterator(take(mid), mid);
+            }
+
+            @Override
+            public boolean tryAdvance(LongConsumer action) {
+                if (index >= fence) {
+                    return false;
+                }
+                action.accept(valueAt.applyAsLong(index++));
+                return true;
+            }
+
+            @Override
+            public void forEachRemaining(LongConsumer action) {
+                long i = index;
+                long end = fence;
+
+                index = end;
+                if (i >= end) {
+                    return;
+                }
+                if (next == null) {
+                    for (; i < end; i++) {
+                        action.accept(valueAt.applyAsLong(i));
+                    }
+                    return;
+                }
+
+                long value = valueAt.applyAsLong(i);
+                action.accept(value);
+                while (++i < end) {
+                    value = next.applyAsLong(value);
+                    action.accept(value);
+                }
+            }
+
+            @Override
+            public int characteristics() {
+                return super.characteristics() | NONNULL;
+            }
+        }
+    }
+
+    public static final class OfDouble extends Sequence {
+        private final LongToDoubleFunction valueAt;
+
+        OfDouble(long from, long size, LongToDoubleFunction valueAt) {
+            super(from, size);
+            this.valueAt = valueAt;
+        }
+
+        public double get(long index) {
+            return valueAt.applyAsDouble(absolute(index));
+        }
+
+        public OfDouble skip(long n) {
+            long skipped = skipped(n);
+            return new OfDouble(from + skipped, size - skipped, valueAt);
+        }
+
+        public OfDouble limit(long maxSize) {
+            return new OfDouble(from, limited(maxSize), valueAt);
+        }
+
+        public Spliterator.OfDouble spliterator() {
+            return new DoubleSpliterator(from, from + size);
+        }
+
+        public DoubleStream stream() {
+            return StreamSupport.doubleStream(spliterator(), false);
+        }
+
+        public DoubleStream parallelStream() {
+            return StreamSupport.doubleStream(spliterator(), true);
+        }
+
+        private final class DoubleSpliterator extends IndexSpliterator implements Spliterator.OfDouble {
+
+            DoubleSpliterator(long index, long fence) {
+                super(index, fence);
+            }
+
+            @Override
+            public Spliterator.OfDouble trySplit() {
+                long mid = mid();
+                return mid < 0 ? null : new DoubleSpliterator(take(mid), mid);
+            }
+
+            @Override
+            public boolean tryAdvance(DoubleConsumer action) {
+                if (index >= fence) {
+                    return false;
+                }
+                action.accept(valueAt.applyAsDouble(index++));
+                return true;
+            }
+
+            @Override
+            public void forEachRemaining(DoubleConsumer action) {
+                long i = index;
+                long end = fence;
+
+                index = end;
+                for (; i < end; i++) {
+                    action.accept(valueAt.applyAsDouble(i));
+                }
+            }
+
+            @Override
+            public int characteristics() {
+                return super.characteristics() | NONNULL;
+            }
+        }
+    }
+
+    public static final class Of<T> extends Sequence {
+        private final LongFunction<? extends T> valueAt;
+
+        Of(long from, long size, LongFunction<? extends T> valueAt) {
+            super(from, size);
+            this.valueAt = valueAt;
+        }
+
+        public T get(long index) {
+            return valueAt.apply(absolute(index));
+        }
+
+        public Of<T> skip(long n) {
+            long skipped = skipped(n);
+            return new Of<>(from + skipped, size - skipped, valueAt);
+        }
+
+        public Of<T> limit(long maxSize) {
+            return new Of<>(from, limited(maxSize), valueAt);
+        }
+
+        public Spliterator<T> spliterator() {
+            return new ObjSpliterator(from, from + size);
+        }
+
+        public Stream<T> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        public Stream<T> parallelStream() {
+            return StreamSupport.stream(spliterator(), true);
+        }
+
+        private final class ObjSpliterator extends IndexSpliterator implements Spliterator<T> {
+
+            ObjSpliterator(long index, long fence) {
+                super(index, fence);
+            }
+
+            @Override
+            public Spliterator<T> trySplit() {
+                long mid = mid();
+                return mid < 0 ? null : new ObjSpliterator(take(mid), mid);
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (index >= fence) {
+                    return false;
+                }
+                action.accept(valueAt.apply(index++));
+                return true;
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super T> action) {
+                long i = index;
+                long end = fence;
+
+                index = end;
+                for (; i < end; i++) {
+                    action.accept(valueAt.apply(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounds [index, fence) of absolute indexes, split in halves.
+     */
+    private abstract static class IndexSpliterator {
+        long index;
+        final long fence;
+
+        IndexSpliterator(long index, long fence) {
+            this.index = index;
+            this.fence = fence;
+        }
+
+        /**
+         * @return the middle of the remaining indexes, or -1 if there are too few to split
+         */
+        long mid() {
+            long remaining = fence - index;
+            return remaining < 2 ? -1 : index + (remaining >>> 1);
+        }
+
+        /**
+         * Gives the indexes up to mid away to the prefix spliterator and returns where they start.
+         */
+        long take(long mid) {
+            long start = index;
+            index = mid;
+            return start;
+        }
+
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+        }
+    }
+}
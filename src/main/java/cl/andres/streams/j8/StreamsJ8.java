@@ -1,10 +1,11 @@
 package cl.andres.streams.j8;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.nio.CharBuffer;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.function.BinaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -41,23 +42,88 @@ public class StreamsJ8 {
     }
 
     public static class Employee {
+        private static final AtomicLongFieldUpdater<Employee> SALARY_BITS =
+                AtomicLongFieldUpdater.newUpdater(Employee.class, "salaryBits");
+
         private Integer id;
         private String name;
-        private double salary;
+        // the salary's Double.doubleToRawLongBits(), so that a raise can be swapped in with a CAS
+        private volatile long salaryBits;
+
+        private static volatile SalaryChangeSink changeSink;
 
         public Employee(Integer id, String name, double salary) {
             this.id = id;
             this.name = name;
-            this.salary = salary;
+            this.salaryBits = Double.doubleToRawLongBits(salary);
         }
 
+        /**
+         * Raises the salary and publishes the change to the salary change sink, which by default prints
+         * "name's salary raised in amount%" from a background thread.
+         */
         public void salaryIncrement(double amount) {
-            this.salary = this.salary + ((this.salary * amount) / 100);
-            System.out.println(name + "'s salary raised in " + amount + "%");
+            double oldSalary = raise(amount);
+            getSalaryChangeSink().publish(this, oldSalary, raised(oldSalary, amount), amount);
+        }
+
+        /**
+         * Raises the salary by the given percentage and, if it changed, publishes the old and new salary of this
+         * raise to the sink, even when other threads raise the same employee concurrently.
+         *
+         * @return true if the salary changed
+         */
+        boolean applyRaise(double amount, SalaryChangeSink sink) {
+            double oldSalary = raise(amount);
+            double newSalary = raised(oldSalary, amount);
+
+            if (newSalary == oldSalary) {
+                return false;
+            }
+            sink.publish(this, oldSalary, newSalary, amount);
+            return true;
+        }
+
+        /**
+         * Swaps in the raised salary without locking, retrying if another raise got in first.
+         *
+         * @return the salary before the raise; the one after it is raised(oldSalary, amount)
+         */
+        private double raise(double amount) {
+            while (true) {
+                long oldBits = salaryBits;
+                double oldSalary = Double.longBitsToDouble(oldBits);
+
+                if (SALARY_BITS.compareAndSet(this, oldBits, Double.doubleToRawLongBits(raised(oldSalary, amount)))) {
+                    return oldSalary;
+                }
+            }
+        }
+
+        private static double raised(double salary, double amount) {
+            return salary + ((salary * amount) / 100);
         }
 
         public double getSalary() {
-            return salary;
+            return Double.longBitsToDouble(salaryBits);
+        }
+
+        public static SalaryChangeSink getSalaryChangeSink() {
+            SalaryChangeSink sink = changeSink;
+
+            if (sink == null) {
+                synchronized (Employee.class) {
+                    if (changeSink == null) {
+                        changeSink = RingBufferSalaryChangeSink.console();
+                    }
+                    sink = changeSink;
+                }
+            }
+            return sink;
+        }
+
+        public static void setSalaryChangeSink(SalaryChangeSink sink) {
+            changeSink = Objects.requireNonNull(sink);
         }
 
         public String getName() {
@@ -73,7 +139,7 @@ public class StreamsJ8 {
             return "Employee{" +
                     "id=" + id +
                     ", name='" + name + '\'' +
-                    ", wage=" + salary +
+                    ", wage=" + getSalary() +
                     '}';
         }
     }
@@ -87,16 +153,22 @@ public class StreamsJ8 {
     public static final String FILE_PATH = "file.txt";
 
     public static class EmployeeRepository {
+        private static final IndexedEmployeeRepository INDEX = IndexedEmployeeRepository.of(arrayOfEmps);
+
         public static Employee findById(Integer id) {
+            return id == null ? null : INDEX.findById(id);
+        }
 
-            for (Employee employee : arrayOfEmps) {
+        public static Employee findById(int id) {
+            return INDEX.findById(id);
+        }
 
-                if (employee.id == id) {
-                    return employee;
-                }
-            }
+        public static Stream<Employee> findAllById(IntStream ids) {
+            return INDEX.findAllById(ids);
+        }
 
-            return null;
+        public static IndexedEmployeeRepository index() {
+            return INDEX;
         }
     }
 
@@ -136,6 +208,7 @@ public class StreamsJ8 {
         System.out.println("========================================================================================");
 
         Stream.of(arrayOfEmps).forEach(employee -> employee.salaryIncrement(10.0));
+        Employee.getSalaryChangeSink().flush();
 
         System.out.println("========================================================================================");
         System.out.println("");
@@ -169,6 +242,34 @@ public class StreamsJ8 {
         System.out.println("streamMap List of employees: ");
         System.out.println(employees);
 
+        /**
+         * When the ids are already primitive, findAllById() resolves the whole batch against the repository index
+         * without boxing a single id.
+         */
+        List<Employee> employeesById = EmployeeRepository.findAllById(IntStream.of(1, 2, 3))
+                .collect(Collectors.toList());
+
+        System.out.println("streamMap List of employees (IntStream): ");
+        System.out.println(employeesById);
+
+        /**
+         * Against a remote store every findById() waits for a round trip. AsyncBatchStage groups the ids into batches
+         * and looks several batches up at once, here against a repository that simulates 5 ms per request.
+         */
+        LatencySimulatingRepository remote = new LatencySimulatingRepository(EmployeeRepository.index(), 5, 0,
+                TimeUnit.MILLISECONDS);
+        AsyncBatchStage<Integer, Employee> findAllById = new AsyncBatchStage.Builder<Integer, Employee>(
+                remote::findAllById)
+                .batchSize(2)
+                .maxConcurrency(2)
+                .build();
+
+        List<Employee> employeesInBatches = findAllById.apply(Stream.of(empIds))
+                .collect(Collectors.toList());
+
+        System.out.println("streamMap List of employees (" + remote.getRequests() + " batch requests): ");
+        System.out.println(employeesInBatches);
+
         System.out.println("========================================================================================");
         System.out.println("");
 
@@ -226,6 +327,24 @@ public class StreamsJ8 {
         System.out.println("Employees with salary greater than $200.000: ");
         System.out.println(employees);
 
+        /**
+         * The same pipeline with every stage wrapped by PipelineMetrics, which counts the elements in and out of each
+         * stage and estimates its time and allocations from a sample of the calls.
+         */
+        PipelineMetrics metrics = new PipelineMetrics("streamFilter", 1);
+
+        List<Employee> instrumented = metrics.measure(() -> Stream.of(empIds)
+                .map(metrics.map("findById", EmployeeRepository::findById))
+                .filter(metrics.filter("nonNull", Objects::nonNull))
+                .filter(metrics.filter("salary", e -> e.getSalary() > 200000))
+                .collect(Collectors.toList()));
+
+        System.out.println("Empleados instrumentados: " + instrumented);
+        for (PipelineMetrics.StageSnapshot stage : metrics.snapshot().getStages()) {
+            System.out.println("  " + stage.getName() + ": " + stage.getElementsIn() + " -> "
+                    + stage.getElementsOut() + " (selectividad " + stage.getSelectivity() + ")");
+        }
+
         System.out.println("========================================================================================");
         System.out.println("");
 
@@ -255,6 +374,27 @@ public class StreamsJ8 {
 
         System.out.println("The first employee found with salary greater than $100.000: " + employee);
 
+        /**
+         * When the repository is a remote store, running the same lookups again pays every round trip again. A
+         * CachingEmployeeRepository in front of it answers the second run from memory.
+         */
+        CachingEmployeeRepository cache = new CachingEmployeeRepository.Builder(
+                new LatencySimulatingRepository(EmployeeRepository.index(), 5, 0, TimeUnit.MILLISECONDS))
+                .maximumSize(100)
+                .build();
+
+        for (int run = 0; run < 2; run++) {
+            employee = Stream.of(empIds)
+                    .map(cache::findById)
+                    .filter(e -> e != null)
+                    .filter(e -> e.getSalary() > 100000)
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        System.out.println("The first employee found (cached): " + employee);
+        System.out.println("Estadísticas del caché: " + cache.getStats());
+
         System.out.println("========================================================================================");
         System.out.println("");
 
@@ -338,6 +478,7 @@ public class StreamsJ8 {
                 .peek(e -> e.salaryIncrement(10.0))
                 .peek(System.out::println)
                 .collect(Collectors.toList());
+        Employee.getSalaryChangeSink().flush();
 
         System.out.println("========================================================================================");
         System.out.println("");
@@ -367,6 +508,19 @@ public class StreamsJ8 {
 
         System.out.println("Stream infinito reducido a: " + collect);
 
+        /**
+         * Sequence computes the nth element of the sequence directly, so skip() and limit() only move its bounds
+         * instead of generating and discarding elements, and its stream splits for parallel().
+         */
+        List<Long> sequence = Sequence.geometric(2, 2)
+                .skip(3)
+                .limit(5)
+                .stream()
+                .boxed()
+                .collect(Collectors.toList());
+
+        System.out.println("Secuencia reducida a: " + sequence);
+
         System.out.println("========================================================================================");
         System.out.println("");
 
@@ -391,6 +545,26 @@ public class StreamsJ8 {
 
         System.out.println("Empleados ordenados por nombre: ");
         System.out.println(employees);
+
+        /**
+         * The comparator above walks two full Strings for each of the O(n log n) comparisons. KeyExtractedSort reads
+         * each name once into packed long keys, sorts the keys and reorders the employees, with the same result.
+         */
+        List<Employee> employeesByName = Arrays.asList(KeyExtractedSort.sortByName(arrayOfEmps, true));
+        System.out.println("Empleados ordenados por nombre (KeyExtractedSort): ");
+        System.out.println(employeesByName);
+
+        /**
+         * When only the first few are needed, bottomK() and topK() keep a heap of k elements instead of sorting the
+         * whole stream; the result is the same as sorted(comparator).limit(k).
+         */
+        List<Employee> firstNames = Arrays.stream(arrayOfEmps)
+                .collect(TopKCollectors.bottomK(2, Comparator.comparing(Employee::getName)));
+        List<Employee> topSalaries = Arrays.stream(arrayOfEmps)
+                .collect(TopKCollectors.topKByDouble(2, Employee::getSalary));
+
+        System.out.println("Primeros 2 por nombre: " + firstNames);
+        System.out.println("2 salarios más altos: " + topSalaries);
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -419,6 +593,15 @@ public class StreamsJ8 {
                 .orElseThrow(NoSuchElementException::new);
 
         System.out.println("Empleado con salario máximo: " + maxSalEmp);
+
+        /**
+         * minMax() finds both in a single pass.
+         */
+        TopKCollectors.MinMax<Employee> salaryRange = Arrays.stream(arrayOfEmps)
+                .collect(TopKCollectors.minMax(Comparator.comparing(Employee::getSalary)))
+                .orElseThrow(NoSuchElementException::new);
+
+        System.out.println("Salario mínimo y máximo: " + salaryRange);
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -440,6 +623,13 @@ public class StreamsJ8 {
                 .collect(Collectors.toList());
 
         System.out.println("distinctList: " + distinctList);
+
+        /**
+         * distinct() above keeps every value as a boxed Integer in a HashSet. PrimitiveDistinct.distinct() keeps the
+         * values of an IntStream in a bitset or a primitive hash table instead, and keeps the same first occurrences.
+         */
+        int[] distinctInts = PrimitiveDistinct.distinct(IntStream.of(2, 5, 3, 2, 4, 3)).toArray();
+        System.out.println("distinctInts: " + Arrays.toString(distinctInts));
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -472,6 +662,20 @@ public class StreamsJ8 {
         System.out.println("allEven: " + allEven);
         System.out.println("oneEven: " + oneEven);
         System.out.println("noneMultipleOfThree: " + noneMultipleOfThree);
+
+        /**
+         * MatchEngine answers the three questions in a single pass over primitive ints, dropping each check as soon as
+         * its answer is known and the whole pass once every answer is.
+         */
+        MatchEngine engine = new MatchEngine.Builder()
+                .allMatch("allEven", i -> i % 2 == 0)
+                .anyMatch("oneEven", i -> i % 2 == 0)
+                .noneMatch("noneMultipleOfThree", i -> i % 3 == 0)
+                .build();
+
+        MatchEngine.Result result = engine.evaluate(new int[] { 2, 4, 5, 6, 8 }, false);
+
+        System.out.println("Una sola pasada: " + result.asMap());
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -548,6 +752,17 @@ public class StreamsJ8 {
                 .orElseThrow(NoSuchElementException::new);
 
         System.out.println("El promedio salarial es: " + avgSal);
+
+        /**
+         * A ColumnarEmployeeTable keeps the salaries in their own double[], so the same average is a sequential read
+         * of a primitive array, with no Employee dereference per element.
+         */
+        ColumnarEmployeeTable table = ColumnarEmployeeTable.of(arrayOfEmps);
+        double avgSalColumnar = table.salaries()
+                .average()
+                .orElseThrow(NoSuchElementException::new);
+
+        System.out.println("El promedio salarial (columnar) es: " + avgSalColumnar);
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -585,6 +800,15 @@ public class StreamsJ8 {
                 .reduce(0.0, Double::sum);
 
         System.out.println("Suma de todos los salarios: " + sumSal);
+
+        /**
+         * reduce() over a Stream<Double> boxes every salary. SalaryAggregator computes the sum, together with count,
+         * min, max and average, in a single unboxed pass; the cost of a raise is just a linear projection of it.
+         */
+        SalaryAggregator.SalaryAggregate payroll = SalaryAggregator.aggregate(arrayOfEmps, Employee::getSalary, false);
+
+        System.out.println("Suma de todos los salarios (SalaryAggregator): " + payroll.getSum());
+        System.out.println("Costo de un aumento de 10%: " + payroll.projectedSum(10.0 / 100, 0.0));
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -605,11 +829,17 @@ public class StreamsJ8 {
          *
          * Collectors.joining() will insert the delimiter between the two String elements of the stream. It internally uses
          * a java.util.StringJoiner to perform the joining operation.
+         *
+         * JoiningCollectors.joining() inserts the delimiter the same way, but only gathers the names while collecting:
+         * the result knows its exact length, so toString() builds the String in a single allocation, and it can also
+         * be encoded as UTF-8 straight into a ByteBuffer or an OutputStream without building the String at all.
          */
-        String empNames = Arrays.stream(arrayOfEmps)
+        JoiningCollectors.Joined joinedNames = Arrays.stream(arrayOfEmps)
                 .map(Employee::getName)
-                .collect(Collectors.joining(", "));
+                .collect(JoiningCollectors.joining(", "));
+        String empNames = joinedNames.toString();
         System.out.println("Empleados: " + empNames);
+        System.out.println("Empleados en UTF-8: " + joinedNames.getUtf8Length() + " bytes");
 
         /**
          * toSet
@@ -653,6 +883,17 @@ public class StreamsJ8 {
                 .summaryStatistics();
         System.out.println("Estadísticas de los salarios (2): " + stats2.toString());
 
+        /**
+         * Both of the above scan every employee again each time. SalaryStatisticsView keeps the statistics of each
+         * group up to date as raises are published to it, so reading them never needs a scan.
+         */
+        SalaryStatisticsView<Character> statsView = new SalaryStatisticsView<>(e -> e.getName().charAt(0));
+        statsView.addAll(Arrays.asList(arrayOfEmps));
+        new PayrollUpdater(EmployeeRepository.index(), Employee.getSalaryChangeSink().andThen(statsView))
+                .raiseWhere(e -> e.getName().startsWith("B"), 5.0);
+        Employee.getSalaryChangeSink().flush();
+        System.out.println("Estadísticas por inicial: " + statsView.snapshot());
+
         /**
          * partitioningBy
          *
@@ -669,6 +910,19 @@ public class StreamsJ8 {
         System.out.print("Números pares: "+ isEven.get(true).toString()
                 + " - Números impares: " + isEven.get(false).toString() + "\n");
 
+        /**
+         * With an IntStream, PrimitiveCollectors.partition() keeps both sides in int arrays instead of Lists of
+         * Integers, and buckets() does the same for more than two groups.
+         */
+        PrimitiveCollectors.IntPartition evenInts = PrimitiveCollectors.partition(IntStream.of(2, 4, 5, 6, 8),
+                i -> i % 2 == 0);
+        System.out.println("Números pares (int[]): " + Arrays.toString(evenInts.get(true))
+                + " - Números impares (int[]): " + Arrays.toString(evenInts.get(false)));
+
+        PrimitiveCollectors.IntBuckets byRemainder = PrimitiveCollectors.buckets(IntStream.rangeClosed(1, 10), 3,
+                i -> i % 3);
+        System.out.println("Números agrupados por resto de 3: " + byRemainder);
+
         /**
          * groupingBy
          *
@@ -680,9 +934,12 @@ public class StreamsJ8 {
          * The value returned by the function is used as a key to the map that we get from the groupingBy collector.
          *
          * In this quick example, we grouped the employees based on the initial character of their first name.
+         *
+         * Collectors.groupingBy() would box every initial into a Character; PrimitiveGroupingCollectors.groupingByChar()
+         * takes the char as is and uses it as an index into an array of buckets, returning the same Map.
          */
         Map<Character, List<Employee>> groupByAlphabet = Arrays.stream(arrayOfEmps)
-                .collect(Collectors.groupingBy(e -> new Character(e.getName().charAt(0))));
+                .collect(PrimitiveGroupingCollectors.groupingByChar(e -> e.getName().charAt(0)));
         System.out.println("Empleados agrupados por inicial: " + groupByAlphabet.toString());
 
         /**
@@ -697,7 +954,7 @@ public class StreamsJ8 {
          * getId() mapping function. These ids are still grouped based on the initial character of employee first name.
          */
         Map<Character, List<Integer>> idGroupedByAlphabet = Arrays.stream(arrayOfEmps)
-                .collect(Collectors.groupingBy(e -> new Character(e.getName().charAt(0)),
+                .collect(PrimitiveGroupingCollectors.groupingByChar(e -> e.getName().charAt(0),
                         Collectors.mapping(Employee::getId, Collectors.toList())));
         System.out.println("Empleados agrupados por inicial y con sus IDs respectivos: " + idGroupedByAlphabet.toString());
 
@@ -726,10 +983,37 @@ public class StreamsJ8 {
         Comparator<Employee> byNameLength = Comparator.comparing(Employee::getName);
 
         Map<Character, Optional<Employee>> longestNameByAlphabet = Arrays.stream(arrayOfEmps)
-                .collect(Collectors.groupingBy(e -> new Character(e.getName().charAt(0)),
+                .collect(PrimitiveGroupingCollectors.groupingByChar(e -> e.getName().charAt(0),
                         Collectors.reducing(BinaryOperator.maxBy(byNameLength))));
         System.out.println("Nombre más largo agrupado por inicial: " + longestNameByAlphabet);
 
+        /**
+         * The three groupings above are collected again from every employee each time. An EmployeeChangeLog keeps the
+         * same groupings as views that follow its changes: a refresh only touches the groups of the employees that
+         * changed, and maxBy() rebuilds a group only when it loses its maximum.
+         */
+        EmployeeChangeLog changeLog = EmployeeChangeLog.of(arrayOfEmps);
+        EmployeeChangeLog.GroupedView<Character, List<Integer>> idsByInitial = changeLog.groupingBy(
+                e -> e.getName().charAt(0),
+                IncrementalCollectors.mapping(Employee::getId, IncrementalCollectors.toList()));
+        EmployeeChangeLog.GroupedView<Character, Long> countByInitial = changeLog.groupingBy(
+                e -> e.getName().charAt(0), IncrementalCollectors.counting());
+        EmployeeChangeLog.GroupedView<Character, Optional<Employee>> longestByInitial = changeLog.groupingBy(
+                e -> e.getName().charAt(0), IncrementalCollectors.maxBy(byNameLength));
+
+        changeLog.insert(new Employee(4, "Bill Joy", 150000.0));
+        changeLog.rename(1, "Jeffrey Bezos");
+        changeLog.delete(4);
+        changeLog.updateSalary(3, 330000.0);
+        System.out.println("Iniciales con cambios: " + longestByInitial.refresh());
+        System.out.println("IDs por inicial: " + idsByInitial.snapshot()
+                + " - Cantidad por inicial: " + countByInitial.snapshot());
+        System.out.println("Nombre más largo por inicial: " + longestByInitial.snapshot()
+                + " (grupos recalculados: " + longestByInitial.getRebuilds() + ")");
+        idsByInitial.close();
+        countByInitial.close();
+        longestByInitial.close();
+
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -771,6 +1055,29 @@ public class StreamsJ8 {
 
         List<Employee> empList = Arrays.asList(arrayOfEmps);
         empList.stream().parallel().forEach(e -> e.salaryIncrement(10.0));
+        Employee.getSalaryChangeSink().flush();
+
+        /**
+         * salaryIncrement() is not thread-safe: an employee that shows up twice in the stream may lose a raise. For
+         * bulk raises, PayrollUpdater resolves each employee once and applies the raise in disjoint batches across
+         * cores.
+         */
+        int raised = new PayrollUpdater(EmployeeRepository.index()).raiseWhere(e -> e.getSalary() < 300000, 10.0);
+        Employee.getSalaryChangeSink().flush();
+        System.out.println("Employees raised by PayrollUpdater: " + raised);
+
+        /**
+         * parallel() always runs in the common pool, shared by every parallel stream of the JVM. PipelineExecutor runs
+         * a job in its own named, sized pool, decides itself how far the job's sources are split and reports it.
+         */
+        try (PipelineExecutor payroll = new PipelineExecutor.Builder("payroll")
+                .parallelism(2)
+                .minSplitSize(1)
+                .build()) {
+            PipelineExecutor.JobResult<Double> total = payroll.run("payroll-total",
+                    job -> job.stream(empList).mapToDouble(Employee::getSalary).sum());
+            System.out.println("Payroll total: " + total.get() + " " + total.getStats());
+        }
 
         System.out.println("========================================================================================");
         System.out.println("");
@@ -804,6 +1111,24 @@ public class StreamsJ8 {
                 .limit(5)
                 .forEach(System.out::println);
 
+        /**
+         * RandomStreams computes the nth number from the seed and n alone, so a parallel stream gets the same numbers
+         * on any number of threads without sharing a generator. Here it produces a synthetic payroll of a million
+         * employees.
+         */
+        RandomStreams.doubles(42)
+                .limit(5)
+                .stream()
+                .forEach(System.out::println);
+
+        double averageSalary = RandomStreams.employees(42, 1_000_000)
+                .parallelStream()
+                .mapToDouble(Employee::getSalary)
+                .average()
+                .orElse(0);
+
+        System.out.println("Salario promedio de la planilla sintética: " + averageSalary);
+
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -831,6 +1156,17 @@ public class StreamsJ8 {
                 .collect(Collectors.toList());
 
         System.out.println("List of numbers: " + collect.toString());
+
+        /**
+         * An arithmetic sequence has a known size and splits in halves like IntStream.range(), so summing ten million
+         * of its elements in parallel uses every core.
+         */
+        long sum = Sequence.arithmetic(2, 2)
+                .limit(10_000_000)
+                .parallelStream()
+                .sum();
+
+        System.out.println("Suma de los primeros 10.000.000 pares: " + sum);
         System.out.println("========================================================================================");
         System.out.println("");
     }
@@ -846,7 +1182,9 @@ public class StreamsJ8 {
     /**
      * File Write Operation
      *
-     * Here we use forEach() to write each element of the stream into the file by calling PrintWriter.println().
+     * Here ChannelLineWriter.write() consumes the stream and writes each element into the file as a line, the same
+     * bytes PrintWriter.println() would write. Instead of going through a Writer line by line, it encodes the lines
+     * straight into large buffers and hands them to a FileChannel in gathering writes.
      */
     public static void streamFileWrite() {
         System.out.println("streamFileWrite");
@@ -860,10 +1198,8 @@ public class StreamsJ8 {
                 "another"
         };
 
-        try (PrintWriter pw = new PrintWriter(
-                Files.newBufferedWriter(Paths.get(FILE_PATH)))) {
-
-            Stream.of(words).forEach(pw::println);
+        try {
+            ChannelLineWriter.write(Stream.of(words), Paths.get(FILE_PATH));
 
             System.out.println("File successfully written!!!");
 
@@ -878,8 +1214,9 @@ public class StreamsJ8 {
     /**
      * File Read Operation
      *
-     * Here Files.lines() returns the lines from the file as a Stream which is consumed by the getPalindrome() for
-     * further processing.
+     * Here MappedLineSource.lines() returns the lines from the file as a Stream which is consumed by the
+     * getPalindrome() for further processing. Unlike Files.lines(), it maps the file into memory and splits it at line
+     * boundaries into balanced chunks, so the parallel() stream actually spreads the work over the cores.
      *
      * getPalindrome() works on the stream, completely unaware of how the stream was generated. This also increases
      * code reusability and simplifies unit testing.
@@ -889,7 +1226,7 @@ public class StreamsJ8 {
         System.out.println("========================================================================================");
 
         try {
-            List<String> str = getPalindrome(Files.lines(Paths.get(FILE_PATH)), 5);
+            List<String> str = getPalindrome(MappedLineSource.lines(Paths.get(FILE_PATH)).parallel(), 5);
             System.out.println("File read, palindrome words: " + str);
 
         } catch (IOException e) {
@@ -900,11 +1237,20 @@ public class StreamsJ8 {
         System.out.println("");
     }
 
-    public static List<String> getPalindrome(Stream<String> stream, int length) {
+    public static List<String> getPalindrome(Stream<? extends CharSequence> stream, int length) {
         return stream
                 .filter(s -> s.length() == length)
-                .filter(s -> s.compareToIgnoreCase(new StringBuilder(s).reverse().toString()) == 0)
+                .filter(PalindromeScanner::isPalindrome)
+                .map(CharSequence::toString)
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Same as getPalindrome(Stream, int) over the lines of a buffer, without building a String per line; large
+     * buffers are scanned in parallel chunks.
+     */
+    public static List<String> getPalindrome(CharBuffer buffer, int length) {
+        return PalindromeScanner.scan(buffer, length, true);
+    }
+
 }
@@ -0,0 +1,342 @@
+package cl.andres.streams.j8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+
+/**
+ * Collectors that select the k greatest or least elements of a stream without sorting it.
+ *
+ * sorted(comparator).limit(k) buffers and sorts every element. These collectors keep the k best elements seen so far
+ * in a bounded binary heap whose root is the worst of them, so a new element only costs a comparison with the root
+ * unless it enters the top k: O(k) memory and O(n log k) time. Partial results of a parallel stream are merged by
+ * offering the elements of one heap to the other.
+ *
+ * Results are the same as sorted(comparator).limit(k) (or sorted(comparator.reversed()).limit(k) for topK): each
+ * element carries its position in the stream, so equal elements keep their encounter order, also across the merge
+ * of parallel results.
+ *
+ * The ...ByLong and ...ByDouble variants extract a primitive key once per element and compare keys directly, without
+ * a Comparator call or a boxed key per comparison.
+ */
+public final class TopKCollectors {
+
+    private TopKCollectors() {
+    }
+
+    /**
+     * @return the k greatest elements, greatest first
+     */
+    public static <T> Collector<T, ?, List<T>> topK(int k, Comparator<? super T> comparator) {
+        return collector(k, comparator, null, true);
+    }
+
+    /**
+     * @return the k least elements, least first
+     */
+    public static <T> Collector<T, ?, List<T>> bottomK(int k, Comparator<? super T> comparator) {
+        return collector(k, comparator, null, false);
+    }
+
+    public static <T> Collector<T, ?, List<T>> topKByLong(int k, ToLongFunction<? super T> key) {
+        return collector(k, null, key, true);
+    }
+
+    public static <T> Collector<T, ?, List<T>> bottomKByLong(int k, ToLongFunction<? super T> key) {
+        return collector(k, null, key, false);
+    }
+
+    /**
+     * Keys are ordered like Double.compare(): -0.0 before 0.0 and NaN after positive infinity.
+     */
+    public static <T> Collector<T, ?, List<T>> topKByDouble(int k, ToDoubleFunction<? super T> key) {
+        return collector(k, null, value -> sortableBits(key.applyAsDouble(value)), true);
+    }
+
+    public static <T> Collector<T, ?, List<T>> bottomKByDouble(int k, ToDoubleFunction<? super T> key) {
+        return collector(k, null, value -> sortableBits(key.applyAsDouble(value)), false);
+    }
+
+    /**
+     * Minimum and maximum in one pass; the same elements min(comparator) and max(comparator) return, i.e. the first
+     * of several equal minimums and the first of several equal maximums.
+     */
+    public static <T> Collector<T, ?, Optional<MinMax<T>>> minMax(Comparator<? super T> comparator) {
+        return Collector.of(
+                () -> new MinMaxContainer<T>(comparator),
+                MinMaxContainer::accept,
+                MinMaxContainer::combine,
+                container -> container.empty ? Optional.empty()
+                        : Optional.of(new MinMax<>(container.min, container.max)));
+    }
+
+    private static <T> Collector<T, ?, List<T>> collector(int k, Comparator<? super T> comparator,
+                                                          ToLongFunction<? super T> key, boolean greatest) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        return Collector.of(
+                () -> new BoundedHeap<T>(k, comparator, key, greatest),
+                BoundedHeap::accept,
+                BoundedHeap::combine,
+                BoundedHeap::toList);
+    }
+
+    /**
+     * Maps a double to a long with the same order as Double.compare().
+     */
+    static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    public static final class MinMax<T> {
+        private final T min;
+        private final T max;
+
+        MinMax(T min, T max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public T getMin() {
+            return min;
+        }
+
+        public T getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "MinMax{" +
+                    "min=" + min +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+
+    private static final class MinMaxContainer<T> {
+        private final Comparator<? super T> comparator;
+        private boolean empty = true;
+        private T min;
+        private T max;
+
+        MinMaxContainer(Comparator<? super T> comparator) {
+            this.comparator = comparator;
+        }
+
+        void accept(T value) {
+            if (empty) {
+                empty = false;
+                min = value;
+                max = value;
+            } else if (comparator.compare(value, min) < 0) {
+                min = value;
+            } else if (comparator.compare(value, max) > 0) {
+                max = value;
+            }
+        }
+
+        MinMaxContainer<T> combine(MinMaxContainer<T> right) {
+            if (empty) {
+                return right;
+            }
+            if (!right.empty) {
+                if (comparator.compare(right.min, min) < 0) {
+                    min = right.min;
+                }
+                if (comparator.compare(right.max, max) > 0) {
+                    max = right.max;
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Heap of at most k entries ordered by rank, the worst ranked entry at the root. An entry ranks better than
+     * another if its value comes first in the requested order, or if both are equal and it came first in the stream.
+     */
+    private static final class BoundedHeap<T> {
+        private final int k;
+        private final Comparator<? super T> comparator;
+        private final ToLongFunction<? super T> key;
+        private final boolean greatest;
+
+        private Object[] values;
+        private long[] keys;
+        private long[] positions;
+        private int size;
+        private long seen;
+
+        BoundedHeap(int k, Comparator<? super T> comparator, ToLongFunction<? super T> key, boolean greatest) {
+            int capacity = Math.min(k, 16);
+
+            this.k = k;
+            this.comparator = comparator;
+            this.key = key;
+            this.greatest = greatest;
+            this.values = new Object[capacity];
+            this.keys = key == null ? null : new long[capacity];
+            this.positions = new long[capacity];
+        }
+
+        void accept(T value) {
+            offer(value, key == null ? 0L : key.applyAsLong(value), seen++);
+        }
+
+        /**
+         * Merges the results of the part of the stream that follows this one.
+         */
+        BoundedHeap<T> combine(BoundedHeap<T> right) {
+            for (int i = 0; i < right.size; i++) {
+                @SuppressWarnings("unchecked")
+                T value = (T) right.values[i];
+                offer(value, right.key == null ? 0L : right.keys[i], seen + right.positions[i]);
+            }
+            seen += right.seen;
+
+            return this;
+        }
+
+        /**
+         * Empties the heap, worst entry first, into a list in rank order.
+         */
+        @SuppressWarnings("unchecked")
+        List<T> toList() {
+            Object[] sorted = new Object[size];
+
+            for (int i = size - 1; i >= 0; i--) {
+                sorted[i] = values[0];
+                moveLast(0);
+            }
+
+            List<T> list = new ArrayList<>(sorted.length);
+            for (Object value : sorted) {
+                list.add((T) value);
+            }
+            return list;
+        }
+
+        private void offer(T value, long valueKey, long position) {
+            if (size < k) {
+                if (size == values.length) {
+                    grow();
+                }
+                set(size, value, valueKey, position);
+                siftUp(size++);
+            } else if (k > 0 && compare(value, valueKey, position, 0) < 0) {
+                set(0, value, valueKey, position);
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Removes the root and fills its slot with the last entry.
+         */
+        private void moveLast(int slot) {
+            size--;
+            values[slot] = values[size];
+            if (keys != null) {
+                keys[slot] = keys[size];
+            }
+            positions[slot] = positions[size];
+            values[size] = null;
+
+            siftDown(slot);
+        }
+
+        private void siftUp(int slot) {
+            while (slot > 0) {
+                int parent = (slot - 1) >>> 1;
+
+                if (compare(slot, parent) <= 0) {
+                    break;
+                }
+                swap(slot, parent);
+                slot = parent;
+            }
+        }
+
+        private void siftDown(int slot) {
+            while (true) {
+                int worst = slot;
+                int left = 2 * slot + 1;
+                int right = left + 1;
+
+                if (left < size && compare(left, worst) > 0) {
+                    worst = left;
+                }
+                if (right < size && compare(right, worst) > 0) {
+                    worst = right;
+                }
+                if (worst == slot) {
+                    return;
+                }
+                swap(slot, worst);
+                slot = worst;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int compare(int slot, int other) {
+            return compare((T) values[slot], keys == null ? 0L : keys[slot], positions[slot], other);
+        }
+
+        /**
+         * @return a negative number if the entry ranks better than the one in slot, a positive one if worse
+         */
+        @SuppressWarnings("unchecked")
+        private int compare(T value, long valueKey, long position, int slot) {
+            int order = comparator != null
+                    ? comparator.compare(value, (T) values[slot])
+                    : Long.compare(valueKey, keys[slot]);
+
+            if (order != 0) {
+                return greatest ? -order : order;
+            }
+            return Long.compare(position, positions[slot]);
+        }
+
+        private void set(int slot, T value, long valueKey, long position) {
+            values[slot] = value;
+            if (keys != null) {
+                keys[slot] = valueKey;
+            }
+            positions[slot] = position;
+        }
+
+        private void swap(int slot, int other) {
+            Object value = values[slot];
+            values[slot] = values[other];
+            values[other] = value;
+
+            if (keys != null) {
+                long valueKey = keys[slot];
+                keys[slot] = keys[other];
+                keys[other] = valueKey;
+            }
+
+            long position = positions[slot];
+            positions[slot] = positions[other];
+            positions[other] = position;
+        }
+
+        private void grow() {
+            int capacity = (int) Math.min(k, Math.max(16L, 2L * values.length));
+
+            values = Arrays.copyOf(values, capacity);
+            if (keys != null) {
+                keys = Arrays.copyOf(keys, capacity);
+            }
+            positions = Arrays.copyOf(positions, capacity);
+        }
+    }
+}